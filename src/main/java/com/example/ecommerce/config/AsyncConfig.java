@@ -6,6 +6,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @EnableAsync
 @Configuration
@@ -22,4 +23,42 @@ public class AsyncConfig {
         return executor;
 
     }
+
+    // Delivers stock alerts to SSE subscribers, off the thread that moved the stock
+    @Bean(name = "stockAlertExecutor")
+    public Executor stockAlertExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("stock-alert-");
+        // a slow subscriber must never push back on buyers: drop the oldest alert instead
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardOldestPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Bulk repricing jobs: a few at a time, a bounded backlog, and rejection (429) beyond it
+    @Bean(name = "priceUpdateExecutor")
+    public Executor priceUpdateExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("price-update-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Writes order status events to SSE subscribers, at most one task per subscriber
+    @Bean(name = "orderEventExecutor")
+    public Executor orderEventExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(10000);
+        executor.setThreadNamePrefix("order-event-");
+        executor.initialize();
+        return executor;
+    }
 }
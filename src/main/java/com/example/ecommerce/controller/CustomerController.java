@@ -2,19 +2,29 @@ package com.example.ecommerce.controller;
 
 import org.springframework.http.ResponseEntity;
 
+import com.example.ecommerce.dto.CustomerSuggestion;
 import com.example.ecommerce.entity.Customer;
+import com.example.ecommerce.exception.CustomerAlreadyExistsException;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.service.CustomerImportJob;
 import com.example.ecommerce.service.CustomerService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 
 import org.springframework.beans.factory.annotation.Autowired;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 
 import java.util.List;
+import java.util.Map;
 
 import java.util.concurrent.ExecutionException;
 
@@ -22,6 +32,9 @@ import java.util.concurrent.ExecutionException;
 @RequestMapping("/api/customer")
 public class CustomerController {
 
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int MAX_AUTOCOMPLETE_RESULTS = 50;
+
     @Autowired
     private CustomerService customerService;
 
@@ -31,16 +44,23 @@ public class CustomerController {
         return ResponseEntity.ok(savedCustomer);
     }
 
+    // ETag = row version, so If-None-Match on an unchanged customer returns 304 without a body
     @GetMapping("/{id}")
     public ResponseEntity<Customer> getCustomer(@PathVariable Long id) {
         Optional<Customer> customer = customerService.getCustomer(id);
-        return customer.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        return customer.map(c -> ResponseEntity.ok().eTag(eTag(c)).body(c))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/email/{email}")
     public ResponseEntity<Customer> getCustomerByEmail(@PathVariable String email) {
         Optional<Customer> customer = customerService.getCustomerByEmail(email);
-        return customer.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        return customer.map(c -> ResponseEntity.ok().eTag(eTag(c)).body(c))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private static String eTag(Customer customer) {
+        return "\"" + customer.getVersion() + "\"";
     }
 
     @GetMapping()
@@ -55,6 +75,8 @@ public class CustomerController {
         try {
             Customer updatedCustomer = customerService.updateCustomer(id, customer);
             return ResponseEntity.ok(updatedCustomer);
+        } catch (CustomerAlreadyExistsException | InvalidRequestException e) {
+            throw e; // the new email belongs to someone else / missing fields, see GlobalExceptionHandler
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -67,9 +89,63 @@ public class CustomerController {
 
     }
 
+    @GetMapping("/email-cache/stats")
+    public ResponseEntity<Map<String, Long>> getEmailCacheStats() {
+        return ResponseEntity.ok(customerService.getEmailCacheStats());
+    }
+
+    @GetMapping("/email-filter/stats")
+    public ResponseEntity<Map<String, Object>> getEmailFilterStats() {
+        return ResponseEntity.ok(customerService.getEmailFilterStats());
+    }
+
+    // Ranked substring search over first name, last name and email
     @GetMapping({"/search"})
-    public ResponseEntity<List<Customer>> searchCustomers(@RequestParam String term) {
-        List<Customer> customers = customerService.searchCustomers(term);
+    public ResponseEntity<List<Customer>> searchCustomers(@RequestParam String term,
+            @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1) {
+            throw new InvalidRequestException("limit must be positive");
+        }
+        List<Customer> customers = customerService.searchCustomers(term, Math.min(limit, MAX_SEARCH_RESULTS));
         return ResponseEntity.ok(customers);
     }
+
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<CustomerSuggestion>> autocomplete(@RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        if (limit < 1) {
+            throw new InvalidRequestException("limit must be positive");
+        }
+        return ResponseEntity.ok(customerService.autocomplete(prefix, Math.min(limit, MAX_AUTOCOMPLETE_RESULTS)));
+    }
+
+    @GetMapping("/search/stats")
+    public ResponseEntity<Map<String, Long>> getSearchIndexStats() {
+        return ResponseEntity.ok(customerService.getSearchIndexStats());
+    }
+
+    /*
+     * Streams the body (text/csv with a header line, or application/x-ndjson)
+     * through the import pipeline and answers with the finished job. Progress of
+     * a running import: GET /import.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<CustomerImportJob> importCustomers(InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType) throws IOException {
+        boolean csv = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.valueOf("text/csv"));
+        CustomerImportJob.Format format = csv ? CustomerImportJob.Format.CSV : CustomerImportJob.Format.NDJSON;
+        CustomerImportJob job = customerService.importCustomers(body, format);
+        return ResponseEntity.ok().location(URI.create("/api/customer/import/" + job.getId())).body(job);
+    }
+
+    @GetMapping("/import")
+    public ResponseEntity<List<CustomerImportJob>> getImportJobs() {
+        return ResponseEntity.ok(customerService.getImportJobs());
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<CustomerImportJob> getImportJob(@PathVariable String jobId) {
+        return customerService.getImportJob(jobId).map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 }
@@ -1,11 +1,23 @@
 package com.example.ecommerce.controller;
 
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.example.ecommerce.dto.OrderPage;
+import com.example.ecommerce.dto.OrderSummary;
 import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.exception.AdmissionRejectedException;
+import com.example.ecommerce.exception.IdempotencyKeyMismatchException;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.exception.OrderNotFoundException;
+import com.example.ecommerce.exception.ServiceUnavailableException;
+import com.example.ecommerce.service.IdempotencyStore;
 import com.example.ecommerce.service.OrderService;
 
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -14,50 +26,78 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 import java.util.concurrent.ExecutionException;
-import org.springframework.transaction.annotation.Transactional;
 
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private OrderService orderService;
 
     
     @PostMapping
-    public ResponseEntity<Order> createOrder(@RequestBody Order order) {
+    public ResponseEntity<OrderSummary> createOrder(@RequestBody Order order,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
-            Order createdOrder = orderService.createOrder(order);
-            return ResponseEntity.ok(createdOrder);
+            if (idempotencyKey == null) {
+                OrderSummary createdOrder = orderService.createOrder(order);
+                return ResponseEntity.ok(createdOrder);
+            }
+            IdempotencyStore.Outcome outcome = orderService.createOrder(order, idempotencyKey);
+            return ResponseEntity.ok()
+                    .header("Idempotent-Replayed", String.valueOf(outcome.replayed()))
+                    .body(outcome.order());
+        } catch (AdmissionRejectedException | IdempotencyKeyMismatchException | ServiceUnavailableException e) {
+            throw e; // 429 with Retry-After / 422 / 503, see GlobalExceptionHandler
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    // Server-Sent Events: one event per status change, optionally for one customer or one order
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStatusChanges(@RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) Long orderId) {
+        return orderService.subscribeToStatusChanges(customerId, orderId);
+    }
+
+    @GetMapping("/stream/stats")
+    public ResponseEntity<Map<String, Long>> getEventStreamStats() {
+        return ResponseEntity.ok(orderService.getEventStreamStats());
+    }
+
+    /*
+     * Order reads return OrderSummary: the order's columns plus customerId.
+     * ?expand=customer adds the full customer, fetched once per response.
+     */
     @GetMapping("/{id}")
-    @Transactional(readOnly = true)
-    public ResponseEntity<Order> getOrder(@PathVariable Long id) {
-        Optional<Order> order = orderService.getOrder(id);
+    public ResponseEntity<OrderSummary> getOrder(@PathVariable Long id,
+            @RequestParam(required = false) String expand) {
+        Optional<OrderSummary> order = orderService.getOrder(id, expandsCustomer(expand));
         return order.map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping
-    public ResponseEntity<List<Order>> getAllOrders() throws ExecutionException, InterruptedException {
-        CompletableFuture<List<Order>> futureOrders = orderService.getAllOrdersAsync();
-        List<Order> orders = futureOrders.get();
+    public ResponseEntity<List<OrderSummary>> getAllOrders(@RequestParam(required = false) String expand)
+            throws ExecutionException, InterruptedException {
+        CompletableFuture<List<OrderSummary>> futureOrders = orderService.getAllOrdersAsync(expandsCustomer(expand));
+        List<OrderSummary> orders = futureOrders.get();
         return ResponseEntity.ok(orders);
     }
 
     @PutMapping("/{id}/status")
-    public ResponseEntity<Order> updateOrderStatus(@PathVariable Long id,
+    public ResponseEntity<OrderSummary> updateOrderStatus(@PathVariable Long id,
             @RequestParam Order.OrderStatus status) {
         try {
-            Order updatedOrder = orderService.updateOrderStatus(id, status);
+            OrderSummary updatedOrder = orderService.updateOrderStatus(id, status);
             return ResponseEntity.ok(updatedOrder);
-        } catch (RuntimeException e) {
+        } catch (OrderNotFoundException e) {
             return ResponseEntity.notFound().build();
         }
     }
@@ -68,20 +108,104 @@ public class OrderController {
         return deleted ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
     }
 
+    /*
+     * Keyset-paginated: at most `limit` orders (capped at 100) per call. When
+     * there are more, the X-Next-Cursor response header holds the cursor for
+     * the next page (?cursor=...).
+     */
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<Order>> getOrdersByCustomer(@PathVariable Long customerId) {
-        List<Order> orders = orderService.getOrdersByCustomer(customerId);
-        return ResponseEntity.ok(orders);
+    public ResponseEntity<List<OrderSummary>> getOrdersByCustomer(@PathVariable Long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String expand) {
+        return pageResponse(orderService.getOrdersByCustomer(customerId, cursor, limit, expandsCustomer(expand)));
     }
 
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<Order>> getOrdersByStatus(@PathVariable Order.OrderStatus status) {
-        List<Order> orders = orderService.getOrdersByStatus(status);
-        return ResponseEntity.ok(orders);
+    public ResponseEntity<List<OrderSummary>> getOrdersByStatus(@PathVariable Order.OrderStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String expand) {
+        return pageResponse(orderService.getOrdersByStatus(status, cursor, limit, expandsCustomer(expand)));
+    }
+
+    private static boolean expandsCustomer(String expand) {
+        if (expand == null || expand.isBlank()) {
+            return false;
+        }
+        if (!"customer".equalsIgnoreCase(expand.trim())) {
+            throw new InvalidRequestException("Unsupported expand '" + expand + "', only 'customer' is supported");
+        }
+        return true;
+    }
+
+    private static ResponseEntity<List<OrderSummary>> pageResponse(OrderPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getOrders());
+    }
+
+    /*
+     * Archived (cold tier) orders only, oldest first: optionally one customer's,
+     * optionally from <= orderDate < to (ISO date-times).
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<List<OrderSummary>> getArchivedOrders(
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String expand) {
+        return ResponseEntity.ok(orderService.getArchivedOrders(customerId, from, to, limit, expandsCustomer(expand)));
+    }
+
+    // Runs the archiver now instead of waiting for app.orders.archive.interval-ms
+    @PostMapping("/archive/run")
+    public ResponseEntity<Map<String, Object>> runArchiver() {
+        return ResponseEntity.ok(orderService.runArchiver());
+    }
+
+    @GetMapping("/archive/stats")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        return ResponseEntity.ok(orderService.getArchiveStats());
     }
 
     @GetMapping("/queue/size")
     public ResponseEntity<Integer> getQueueSize() {
         return ResponseEntity.ok(orderService.getQueueSize());
     }
+
+    @GetMapping("/fulfilment/stats")
+    public ResponseEntity<Map<String, Object>> getFulfilmentStats() {
+        return ResponseEntity.ok(orderService.getFulfilmentStats());
+    }
+
+    @GetMapping("/journal/stats")
+    public ResponseEntity<Map<String, Object>> getJournalStats() {
+        return ResponseEntity.ok(orderService.getJournalStats());
+    }
+
+    // current concurrency limit, in-flight orders, shed rate
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(orderService.getAdmissionStats());
+    }
+
+    @GetMapping("/intake/stats")
+    public ResponseEntity<Map<String, Object>> getIntakeStats() {
+        return ResponseEntity.ok(orderService.getIntakeStats());
+    }
+
+    // per lane: depth, workers, queue wait (avg / p50 / p99 / max)
+    @GetMapping("/lanes/stats")
+    public ResponseEntity<Map<String, Object>> getLaneStats() {
+        return ResponseEntity.ok(orderService.getLaneStats());
+    }
+
+    @GetMapping("/idempotency/stats")
+    public ResponseEntity<Map<String, Long>> getIdempotencyStats() {
+        return ResponseEntity.ok(orderService.getIdempotencyStats());
+    }
 }
@@ -1,13 +1,29 @@
 package com.example.ecommerce.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.bind.annotation.*;
 
+import com.example.ecommerce.dto.StockReservationRequest;
 import com.example.ecommerce.entity.Product;
+import com.example.ecommerce.service.CategoryIndex;
+import com.example.ecommerce.service.PriceUpdateJob;
 import com.example.ecommerce.service.ProductService;
+import com.example.ecommerce.exception.InvalidRequestException;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -16,19 +32,31 @@ import java.util.concurrent.CompletableFuture;
 @RequestMapping("/api/products")
 public class ProductController {
 
+    private static final int MAX_STREAM_PAGE_SIZE = 1000;
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PostMapping
     public ResponseEntity<Product> createProduct(@RequestBody Product product) {
         Product createdProduct = productService.createProduct(product);
         return ResponseEntity.ok(createdProduct);
     }
 
+    /*
+     * Conditional GET: the response carries a strong ETag, and a request whose
+     * If-None-Match still matches gets 304 with no body (Spring skips the
+     * serialization when the ETag matches).
+     */
     @GetMapping("/{id}")
     public ResponseEntity<Product> getProduct(@PathVariable Long id) {
         Optional<Product> product = productService.getProduct(id);
-        return product.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+        return product.map(p -> ResponseEntity.ok().eTag(eTag(p)).body(p))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping
@@ -37,10 +65,80 @@ public class ProductController {
                 .thenApply(ResponseEntity::ok);
     }
 
+    /*
+     * Streams the catalog page by page instead of materializing it: NDJSON
+     * (one product per line) by default, or a chunked JSON array with
+     * format=json. Each page is flushed to the client as soon as it is read.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamProducts(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "500") int pageSize,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        int boundedPageSize = Math.max(1, Math.min(pageSize, MAX_STREAM_PAGE_SIZE));
+        boolean jsonArray = "json".equalsIgnoreCase(format);
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.setRootValueSeparator(null);
+            if (jsonArray) {
+                generator.writeStartArray();
+            }
+            productService.streamProducts(category, minPrice, maxPrice, boundedPageSize, page -> {
+                try {
+                    for (Product product : page) {
+                        generator.writeObject(product);
+                        if (!jsonArray) {
+                            generator.writeRaw('\n');
+                        }
+                    }
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e); // client went away, stop reading pages
+                }
+            });
+            if (jsonArray) {
+                generator.writeEndArray();
+            }
+            generator.close();
+        };
+        MediaType contentType = jsonArray ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
+
+    // With If-Match the update only applies to the version the client read (412 otherwise)
     @PatchMapping("/{id}")
-    public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody Product product) {
-        Product updatedProduct = productService.updateProduct(id, product);
-        return ResponseEntity.ok(updatedProduct);
+    public ResponseEntity<Product> updateProduct(@PathVariable Long id, @RequestBody Product product,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Product updatedProduct = ifMatch == null || ifMatch.trim().equals("*")
+                ? productService.updateProduct(id, product)
+                : productService.updateProduct(id, product, versionOf(ifMatch));
+        return ResponseEntity.ok().eTag(eTag(updatedProduct)).body(updatedProduct);
+    }
+
+    /*
+     * "<version>.<stock>": the row version alone is not enough, because the
+     * stock ledger moves stock_quantity ahead of the version between flushes.
+     */
+    private static String eTag(Product product) {
+        return "\"" + product.getVersion() + "." + product.getStockQuantity() + "\"";
+    }
+
+    // If-Match is compared on the version part only
+    private static long versionOf(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/") || tag.contains(",")) {
+            throw new InvalidRequestException("If-Match must be a single strong ETag");
+        }
+        tag = tag.replace("\"", "");
+        int dot = tag.indexOf('.');
+        try {
+            return Long.parseLong(dot < 0 ? tag : tag.substring(0, dot));
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Malformed If-Match header: " + ifMatch);
+        }
     }
 
 
@@ -57,28 +155,114 @@ public class ProductController {
         return ResponseEntity.ok("Stock updated successfully");
     }
 
+    // All-or-nothing reservation of a whole cart
+    @PostMapping("/stock/reserve-batch")
+    public ResponseEntity<String> reserveBatch(@RequestBody StockReservationRequest request) {
+        if (request.getLines() == null || request.getLines().isEmpty()) {
+            return ResponseEntity.badRequest().body("No lines to reserve");
+        }
+        int products = productService.reserveBatch(request.getLines());
+        return ResponseEntity.ok("Stock reserved for " + products + " products");
+    }
+
+    @GetMapping("/{id}/stock")
+    public ResponseEntity<Map<String, Object>> getStock(@PathVariable Long id) {
+        return ResponseEntity.ok(productService.getStockDetails(id));
+    }
+
+    // Split stock mode: spread a hot product's stock over N independently drawn-down buckets
+    @PutMapping("/{id}/stock/split")
+    public ResponseEntity<Map<String, Object>> splitStock(@PathVariable Long id,
+            @RequestParam(defaultValue = "16") int buckets) {
+        return ResponseEntity.ok(productService.switchStockMode(id, buckets));
+    }
+
+    @DeleteMapping("/{id}/stock/split")
+    public ResponseEntity<Map<String, Object>> mergeStock(@PathVariable Long id) {
+        return ResponseEntity.ok(productService.switchStockMode(id, 1));
+    }
+
     @PostMapping("/batch-update-prices")
-    public ResponseEntity<String> batchUpdatePrices(@RequestBody List<Long> productIds,
+    public ResponseEntity<PriceUpdateJob> batchUpdatePrices(@RequestBody List<Long> productIds,
             @RequestParam Double multiplier) {
-        productService.batchUpdatePrices(productIds, multiplier);
-        return ResponseEntity.ok("Batch update started asynchronously");
+        PriceUpdateJob job = productService.batchUpdatePrices(productIds, multiplier);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/products/batch-update-prices/" + job.getId()))
+                .body(job);
+    }
+
+    @GetMapping("/batch-update-prices/{jobId}")
+    public ResponseEntity<PriceUpdateJob> getPriceUpdateJob(@PathVariable String jobId) {
+        return productService.getPriceUpdateJob(jobId).map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
+    // sort = id | price | stock, direction = asc | desc; without a limit the whole category is returned
     @GetMapping("/category/{category}")
-    public ResponseEntity<List<Product>> getProductsByCategory(@PathVariable String category) {
-        List<Product> products = productService.getProductsByCategory(category);
+    public ResponseEntity<List<Product>> getProductsByCategory(@PathVariable String category,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(defaultValue = "asc") String direction,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int limit) {
+        CategoryIndex.SortField sortField;
+        try {
+            sortField = CategoryIndex.SortField.valueOf(sort.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("sort must be one of id, price, stock");
+        }
+        if (offset < 0 || limit < 0) {
+            throw new InvalidRequestException("offset and limit must not be negative");
+        }
+        List<Product> products = productService.getProductsByCategory(category, sortField,
+                "desc".equalsIgnoreCase(direction), offset, limit);
         return ResponseEntity.ok(products);
     }
 
+    // Ranked full-text search over name, description and category
+    @GetMapping("/search")
+    public ResponseEntity<List<Product>> searchProducts(@RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1) {
+            throw new InvalidRequestException("limit must be positive");
+        }
+        return ResponseEntity.ok(productService.searchProducts(q, Math.min(limit, MAX_SEARCH_RESULTS)));
+    }
+
+    @GetMapping("/stats/search")
+    public ResponseEntity<Map<String, Long>> getSearchIndexStats() {
+        return ResponseEntity.ok(productService.getSearchIndexStats());
+    }
+
     @GetMapping("/low-stock")
     public ResponseEntity<List<Product>> getLowStockProducts(@RequestParam(defaultValue = "10") Integer threshold) {
         List<Product> products = productService.getLowStockProducts(threshold);
         return ResponseEntity.ok(products);
     }
 
+    // Server-Sent Events: LOW_STOCK, OUT_OF_STOCK and RESTOCKED as they happen
+    @GetMapping(path = "/low-stock/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStockAlerts() {
+        return productService.subscribeToStockAlerts();
+    }
+
+    @GetMapping("/stats/low-stock")
+    public ResponseEntity<Map<String, Long>> getLowStockWatcherStats() {
+        return ResponseEntity.ok(productService.getLowStockWatcherStats());
+    }
+
     @GetMapping("/stats/operations")
     public ResponseEntity<Long> getOperationCount() {
         return ResponseEntity.ok(productService.getOperationCount());
     }
+
+    @GetMapping("/stats/cache")
+    public ResponseEntity<Map<String, Long>> getCacheStats() {
+        return ResponseEntity.ok(productService.getCacheStats());
+    }
+
+    @GetMapping("/stats/stock-ledger")
+    public ResponseEntity<Map<String, Long>> getStockLedgerStats() {
+        return ResponseEntity.ok(productService.getStockLedgerStats());
+    }
              
 }
@@ -0,0 +1,18 @@
+package com.example.ecommerce.dto;
+
+import lombok.*;
+
+// One autocomplete entry, answered from the in-memory index without a query
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerSuggestion {
+
+    private Long id;
+
+    private String firstName;
+
+    private String lastName;
+
+    private String email;
+}
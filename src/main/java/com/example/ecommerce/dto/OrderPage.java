@@ -0,0 +1,15 @@
+package com.example.ecommerce.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPage {
+
+    private List<OrderSummary> orders;
+
+    private String nextCursor; // null on the last page
+}
@@ -0,0 +1,25 @@
+package com.example.ecommerce.dto;
+
+import com.example.ecommerce.entity.Order;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusEvent {
+
+    private Long orderId;
+
+    private Long customerId;
+
+    private Order.OrderStatus previousStatus; // null for a new order or the snapshot sent on subscribe
+
+    private Order.OrderStatus status;
+
+    private int coalesced; // further transitions of this order folded into this event for a slow subscriber
+
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,56 @@
+package com.example.ecommerce.dto;
+
+import com.example.ecommerce.entity.Customer;
+import com.example.ecommerce.entity.Order;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/*
+ * What order endpoints return: the order's own columns and its customer id.
+ * The full customer is only filled in on request (?expand=customer), batch
+ * fetched once per response rather than once per order.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary {
+
+    private Long id;
+
+    private Long customerId;
+
+    private LocalDateTime orderDate;
+
+    private BigDecimal totalAmount;
+
+    private Order.OrderStatus status;
+
+    private Order.OrderPriority priority;
+
+    private Long version;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Customer customer; // only with ?expand=customer
+
+    // JPQL constructor projection (SELECT new ...): reads the customer_id column, never the customer row
+    public OrderSummary(Long id, Long customerId, LocalDateTime orderDate, BigDecimal totalAmount,
+            Order.OrderStatus status, Order.OrderPriority priority, Long version, LocalDateTime createdAt,
+            LocalDateTime updatedAt) {
+        this(id, customerId, orderDate, totalAmount, status, priority, version, createdAt, updatedAt, null);
+    }
+
+    public static OrderSummary from(Order order) {
+        return new OrderSummary(order.getId(), order.getCustomer().getId(), order.getOrderDate(),
+                order.getTotalAmount(), order.getStatus(), order.getPriority(), order.getVersion(),
+                order.getCreatedAt(), order.getUpdatedAt());
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.ecommerce.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockAlertEvent {
+
+    public enum Type {
+        LOW_STOCK, OUT_OF_STOCK, RESTOCKED
+    }
+
+    private Type type;
+
+    private Long productId;
+
+    private Integer previousStock; // null if it was above the tracked range (app.low-stock.max-tracked-stock)
+
+    private Integer stock;
+
+    private Integer threshold;
+
+    private LocalDateTime timestamp;
+}
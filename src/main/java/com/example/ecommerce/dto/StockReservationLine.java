@@ -0,0 +1,13 @@
+package com.example.ecommerce.dto;
+
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservationLine {
+
+    private Long productId;
+
+    private Integer quantity;
+}
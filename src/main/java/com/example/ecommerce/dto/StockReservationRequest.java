@@ -0,0 +1,12 @@
+package com.example.ecommerce.dto;
+
+import java.util.List;
+import lombok.*;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservationRequest {
+
+    private List<StockReservationLine> lines;
+}
@@ -33,6 +33,9 @@ public class Customer {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    @Version
+    private Long version;
+
     @PrePersist
     public void prePersist() {
         LocalDateTime now = LocalDateTime.now();
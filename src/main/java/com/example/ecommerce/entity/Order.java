@@ -6,18 +6,26 @@ import java.time.LocalDateTime;
 import lombok.*;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // "my orders", newest first: WHERE customer_id = ? ORDER BY order_date DESC, id DESC
+        @Index(name = "idx_orders_customer_date", columnList = "customer_id, order_date, id"),
+        // ops console, oldest first: WHERE status = ? ORDER BY order_date, id
+        @Index(name = "idx_orders_status_date", columnList = "status, order_date, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
 
+    // pooled sequence: ids are handed out in blocks of 50, so inserts can be JDBC-batched (IDENTITY cannot)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     
-    @ManyToOne(fetch = FetchType.EAGER)
+    // LAZY: order reads go through OrderSummary and only carry the customer id
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", nullable = false)
     private Customer customer;
 
@@ -32,6 +40,13 @@ public class Order {
     private OrderStatus status;
     // JPA will store the enum constant name as a String in the database.
 
+    // explicit processing lane; null = chosen from totalAmount (see OrderPriorityLanes)
+    @Enumerated(EnumType.STRING)
+    private OrderPriority priority;
+
+    @Version
+    private Long version;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -42,6 +57,10 @@ public class Order {
         PENDING, PROCESSING, SHIPPED, DELIVERED, CANCELLED
     }
 
+    public enum OrderPriority {
+        EXPRESS, HIGH, STANDARD
+    }
+
     @PreUpdate
     public void preUpdate() {
         this.updatedAt = LocalDateTime.now();
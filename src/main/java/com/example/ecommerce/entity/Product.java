@@ -5,9 +5,11 @@ import jakarta.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
-@Table(name = "products")
+@DynamicUpdate // UPDATE only changed columns, so a name/price edit never rewrites stock_quantity behind the StockLedger
+@Table(name = "products", indexes = @Index(name = "idx_products_category", columnList = "category"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,8 @@
+package com.example.ecommerce.exception;
+
+// The operation needs a feature that is switched off in this deployment (see application.yml)
+public class FeatureDisabledException extends RuntimeException {
+    public FeatureDisabledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.ecommerce.exception;
+
+// The Idempotency-Key was already used for a request with a different body
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException(String key) {
+        super("Idempotency-Key " + key + " was already used for a different request");
+    }
+}
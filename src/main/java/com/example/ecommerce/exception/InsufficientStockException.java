@@ -0,0 +1,16 @@
+package com.example.ecommerce.exception;
+
+public class InsufficientStockException extends RuntimeException {
+
+    private final Long productId;
+
+    public InsufficientStockException(Long productId, int requested, int available) {
+        super("Insufficient stock for product " + productId + ". Requested: " + requested + ", available: "
+                + available);
+        this.productId = productId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+}
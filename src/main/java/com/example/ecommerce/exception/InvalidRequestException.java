@@ -0,0 +1,8 @@
+package com.example.ecommerce.exception;
+
+// The request itself is malformed (bad parameter, header or body); answered with 400
+public class InvalidRequestException extends RuntimeException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
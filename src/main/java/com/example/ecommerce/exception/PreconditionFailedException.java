@@ -0,0 +1,9 @@
+package com.example.ecommerce.exception;
+
+// If-Match did not match: the product changed since the client read it
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(Long productId, long expectedVersion) {
+        super("Product " + productId + " is no longer at version " + expectedVersion
+                + ", re-read it and retry the update");
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.ecommerce.exception;
+
+// Temporarily unable to answer (an index still loading, intake shutting down); the client should retry later
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.ecommerce.repository;
 
-import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -12,5 +11,4 @@ import com.example.ecommerce.entity.Customer;
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
 
     Optional<Customer> findByEmail(String email);
-    List<Customer> findByFirstNameContainingOrLastNameContaining(String firstName, String lastName);
 }
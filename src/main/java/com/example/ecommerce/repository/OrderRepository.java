@@ -1,21 +1,73 @@
 package com.example.ecommerce.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 
+import com.example.ecommerce.dto.OrderSummary;
 import com.example.ecommerce.entity.Order;
 
 public interface OrderRepository extends JpaRepository<Order,Long> {
 
-    List<Order> findByCustomerId(Long customerId);
+    // Constructor projection: no entity, no persistence context, no customer row
+    String SUMMARY = "SELECT new com.example.ecommerce.dto.OrderSummary(o.id, o.customer.id, o.orderDate, "
+            + "o.totalAmount, o.status, o.priority, o.version, o.createdAt, o.updatedAt) FROM Order o ";
 
-    List<Order> findByStatus(Order.OrderStatus status);
+    @Query(SUMMARY + "WHERE o.id = :id")
+    Optional<OrderSummary> findSummaryById(@Param("id") Long id);
 
-    @Query("SELECT o FROM Order o WHERE o.customer.id = :customerId ORDER BY o.orderDate DESC")
-    List<Order> findRecentOrdersByCustomer(@Param("customerId") Long customerId);
+    @Query(SUMMARY + "ORDER BY o.id")
+    List<OrderSummary> findAllSummaries();
+
+    /*
+     * Keyset pagination over (order_date, id), served by the composite indexes
+     * declared on Order: each page continues strictly after the last row of
+     * the previous one, so reading page 500 costs the same as page 1 and
+     * nothing is skipped or repeated when orders arrive in between.
+     */
+    @Query(SUMMARY + "WHERE o.customer.id = :customerId ORDER BY o.orderDate DESC, o.id DESC")
+    List<OrderSummary> findFirstPageByCustomer(@Param("customerId") Long customerId, Pageable page);
+
+    @Query(SUMMARY + "WHERE o.customer.id = :customerId "
+            + "AND (o.orderDate < :orderDate OR (o.orderDate = :orderDate AND o.id < :id)) "
+            + "ORDER BY o.orderDate DESC, o.id DESC")
+    List<OrderSummary> findPageByCustomerBefore(@Param("customerId") Long customerId,
+            @Param("orderDate") LocalDateTime orderDate, @Param("id") Long id, Pageable page);
+
+    @Query(SUMMARY + "WHERE o.status = :status ORDER BY o.orderDate ASC, o.id ASC")
+    List<OrderSummary> findFirstPageByStatus(@Param("status") Order.OrderStatus status, Pageable page);
+
+    @Query(SUMMARY + "WHERE o.status = :status "
+            + "AND (o.orderDate > :orderDate OR (o.orderDate = :orderDate AND o.id > :id)) "
+            + "ORDER BY o.orderDate ASC, o.id ASC")
+    List<OrderSummary> findPageByStatusAfter(@Param("status") Order.OrderStatus status,
+            @Param("orderDate") LocalDateTime orderDate, @Param("id") Long id, Pageable page);
+
+    @Query("SELECT o.status FROM Order o WHERE o.id = :id")
+    Optional<Order.OrderStatus> findStatusById(@Param("id") Long id);
+
+    /*
+     * Conditional transition: only applies if the order is still in the status
+     * the caller saw, so concurrent writers to the same order cannot overwrite
+     * each other and writers to different orders never wait on one another.
+     * Returns 0 when the order is gone or its status moved.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :to, o.version = o.version + 1, o.updatedAt = :now "
+            + "WHERE o.id = :id AND o.status = :from")
+    int transitionStatus(@Param("id") Long id, @Param("from") Order.OrderStatus from,
+            @Param("to") Order.OrderStatus to, @Param("now") LocalDateTime now);
+
+    // Returns 0 when the order did not exist (no existsById round trip first)
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o.id = :id")
+    int deleteByIdReturningCount(@Param("id") Long id);
 }
@@ -6,6 +6,7 @@ import org.springframework.lang.NonNull;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import jakarta.persistence.LockModeType;
@@ -52,6 +53,16 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
       * and @Lock, not with the built-in findById().
       */
 
+    /*
+     * Conditional decrement: the row is only touched if it still has enough
+     * stock, so there is no read-then-write window and no separate SELECT ...
+     * FOR UPDATE. Returns 0 when the product is missing or short.
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity - :quantity, p.version = p.version + 1, "
+            + "p.updatedAt = CURRENT_TIMESTAMP WHERE p.id = :id AND p.stockQuantity >= :quantity")
+    int reserveStock(@Param("id") Long id, @Param("quantity") int quantity);
+
     List<Product> findByCategory(String category);
 
     List<Product> findByStockQuantityLessThan(Integer quantity);
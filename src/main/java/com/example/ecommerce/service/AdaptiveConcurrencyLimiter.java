@@ -0,0 +1,227 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.exception.AdmissionRejectedException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Adaptive admission control for order intake (gradient algorithm).
+ *
+ * At most `limit` orders are in progress at once; anything above is rejected
+ * immediately with AdmissionRejectedException (429 + Retry-After) instead of
+ * queueing behind a saturated intake batcher or database.
+ *
+ * The limit follows the observed latency. Every windowMs the average latency
+ * of the completed requests (rtt) is compared with the best latency seen
+ * recently (minRtt, i.e. the latency without queueing):
+ *
+ * gradient = clamp(rttTolerance * minRtt / rtt, 0.5, 1.0)
+ * newLimit = limit * gradient + sqrt(limit)
+ *
+ * While latency stays within the tolerance the limit grows by sqrt(limit) per
+ * window; once requests start queueing the gradient drops below 1 and the
+ * limit shrinks in proportion. A window with a timed-out or shed request
+ * (drop) is a multiplicative decrease. The result is smoothed and clamped to
+ * [minLimit, maxLimit]. The limit is not raised while less than half of it is
+ * used, and minRtt is re-probed every MIN_RTT_RESET_WINDOWS windows so that
+ * a permanently slower backend does not pin the limit at its minimum.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final int MIN_RTT_RESET_WINDOWS = 100;
+    private static final double DROP_DECREASE = 0.9;
+
+    @Value("${app.orders.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.orders.admission.initial-limit:64}")
+    private int initialLimit;
+
+    @Value("${app.orders.admission.min-limit:8}")
+    private int minLimit;
+
+    @Value("${app.orders.admission.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${app.orders.admission.window-ms:250}")
+    private long windowMs;
+
+    @Value("${app.orders.admission.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${app.orders.admission.rtt-tolerance:1.5}")
+    private double rttTolerance;
+
+    private volatile double limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // current window, reset by whoever closes it
+    private final LongAdder windowRttNanos = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAdder windowAccepted = new LongAdder();
+    private final LongAdder windowRejected = new LongAdder();
+    private final AtomicInteger windowPeakInFlight = new AtomicInteger();
+    private volatile boolean windowDropped;
+    private volatile long windowStart = System.nanoTime();
+
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private volatile long minRttNanos = Long.MAX_VALUE; // written under updateLock
+    private int windowsSinceMinRttReset; // guarded by updateLock
+    private volatile long lastRttNanos;
+    private volatile double lastShedRate;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // One admitted request; release() or drop() exactly once, in a finally block
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final boolean counted;
+        private boolean done;
+
+        private Permit(boolean counted) {
+            this.counted = counted;
+        }
+
+        // Completed (successfully or with a client error): its latency is a sample
+        public void release() {
+            finish(false);
+        }
+
+        // Timed out or shed further down: the system is overloaded
+        public void drop() {
+            finish(true);
+        }
+
+        private void finish(boolean overloaded) {
+            if (done || !counted) {
+                return;
+            }
+            done = true;
+            inFlight.decrementAndGet();
+            long now = System.nanoTime();
+            if (overloaded) {
+                dropped.incrementAndGet();
+                windowDropped = true;
+            } else {
+                windowRttNanos.add(now - startNanos);
+                windowSamples.increment();
+            }
+            maybeUpdateLimit(now);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalStateException("app.orders.admission requires 1 <= min-limit <= max-limit");
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public Permit acquire() {
+        if (!enabled) {
+            return new Permit(false);
+        }
+        while (true) {
+            int current = inFlight.get();
+            int currentLimit = (int) limit;
+            if (current >= currentLimit) {
+                rejected.incrementAndGet();
+                windowRejected.increment();
+                throw new AdmissionRejectedException("Order intake is at capacity (" + current + " of "
+                        + currentLimit + " in progress), retry later", retryAfterSeconds());
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.incrementAndGet();
+                windowAccepted.increment();
+                windowPeakInFlight.accumulateAndGet(current + 1, Math::max);
+                return new Permit(true);
+            }
+        }
+    }
+
+    // Roughly how long until the current backlog has drained; at least one second
+    public long retryAfterSeconds() {
+        double backlogNanos = (double) lastRttNanos * Math.max(1, inFlight.get()) / Math.max(1.0, limit);
+        return Math.max(1, (long) Math.ceil(backlogNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void maybeUpdateLimit(long now) {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        if (now - windowStart < windowNanos || !updateLock.tryLock()) {
+            return;
+        }
+        try {
+            if (now - windowStart < windowNanos) {
+                return; // another thread closed the window first
+            }
+            windowStart = now;
+            long samples = windowSamples.sumThenReset();
+            long rttSum = windowRttNanos.sumThenReset();
+            long admitted = windowAccepted.sumThenReset();
+            long shed = windowRejected.sumThenReset();
+            int peak = windowPeakInFlight.getAndSet(inFlight.get());
+            boolean overloaded = windowDropped;
+            windowDropped = false;
+            lastShedRate = admitted + shed == 0 ? 0 : (double) shed / (admitted + shed);
+
+            double current = limit;
+            double next;
+            if (overloaded) {
+                next = current * DROP_DECREASE;
+            } else if (samples == 0) {
+                return;
+            } else {
+                long rtt = rttSum / samples;
+                lastRttNanos = rtt;
+                if (++windowsSinceMinRttReset >= MIN_RTT_RESET_WINDOWS) {
+                    minRttNanos = rtt;
+                    windowsSinceMinRttReset = 0;
+                } else {
+                    minRttNanos = Math.min(minRttNanos, rtt);
+                }
+                double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * minRttNanos / rtt));
+                next = current * gradient + Math.sqrt(current);
+                if (next > current && peak < current / 2) {
+                    next = current; // the limit is not what holds requests back
+                }
+            }
+            next = current * (1 - smoothing) + next * smoothing;
+            limit = Math.max(minLimit, Math.min(maxLimit, next));
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long acceptedCount = accepted.get();
+        long rejectedCount = rejected.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("limit", (int) limit);
+        stats.put("inFlight", inFlight.get());
+        stats.put("accepted", acceptedCount);
+        stats.put("rejected", rejectedCount);
+        stats.put("dropped", dropped.get());
+        stats.put("shedRate", acceptedCount + rejectedCount == 0 ? 0.0
+                : (double) rejectedCount / (acceptedCount + rejectedCount));
+        stats.put("recentShedRate", lastShedRate);
+        stats.put("rttMs", lastRttNanos / 1_000_000.0);
+        stats.put("minRttMs", minRttNanos == Long.MAX_VALUE ? null : minRttNanos / 1_000_000.0);
+        return stats;
+    }
+}
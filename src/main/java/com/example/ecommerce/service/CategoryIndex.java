@@ -0,0 +1,367 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * In-memory category -> product ids index, so category pages never scan the
+ * products table.
+ *
+ * Every category maps to an immutable Posting of primitive arrays:
+ * - ids in ascending order
+ * - ids in (price, id) order with the matching prices, so "sort by price"
+ * is a slice of an array that is already sorted
+ *
+ * Readers just grab the current Posting reference (no lock). Writers are
+ * serialized by writeLock and replace the affected Posting with a modified
+ * copy (copy-on-write), which is cheap because catalog writes are rare next to
+ * category page views.
+ *
+ * Sorting by stock cannot be precomputed (stock moves on every sale), so the
+ * live counters are packed with their position into a long[] and sorted as
+ * primitives, in a scratch buffer borrowed from a small bounded pool
+ * (ScratchPool) rather than one kept per request thread.
+ *
+ * Saves arrive as after-commit callbacks, which concurrent writers can run in
+ * the opposite order to their commits. Every entry therefore carries the row
+ * version it was built from: an event for an older (or the same) version is
+ * ignored, and a save reported after the product's delete is dropped
+ * (DeletedProducts).
+ */
+@Component
+public class CategoryIndex implements ProductChangeListener {
+
+    public enum SortField {
+        ID, PRICE, STOCK
+    }
+
+    private static final int POSITION_BITS = 29; // up to 536M products per category
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    private final ConcurrentHashMap<String, Posting> postings = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<Long, IndexedProduct> indexed = new HashMap<>(); // guarded by writeLock
+    private final DeletedProducts deleted = new DeletedProducts(); // guarded by writeLock
+    private volatile boolean ready;
+
+    private final ScratchPool<long[]> scratchPool = new ScratchPool<>(() -> new long[1024]);
+
+    // ---------------------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------------------
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size(String category) {
+        Posting posting = postings.get(category);
+        return posting == null ? 0 : posting.ids.length;
+    }
+
+    /*
+     * Ids of one page of the category in the requested order, or null when
+     * the index cannot answer (still loading, or stock sort without a ledger).
+     */
+    public long[] query(String category, SortField sort, boolean descending, int offset, int limit) {
+        if (!ready || (sort == SortField.STOCK && !stockLedger.isEnabled())) {
+            return null;
+        }
+        Posting posting = postings.get(category);
+        if (posting == null) {
+            return new long[0];
+        }
+        int n = posting.ids.length;
+        int from = Math.min(Math.max(offset, 0), n);
+        int count = Math.min(limit, n - from);
+        long[] page = new long[count];
+
+        switch (sort) {
+            case ID -> slice(posting.ids, descending, from, page);
+            case PRICE -> slice(posting.byPrice, descending, from, page);
+            case STOCK -> {
+                long[] keys = scratchPool.borrow();
+                if (keys.length < n) {
+                    keys = new long[Math.max(n, keys.length * 2)];
+                }
+                try {
+                    for (int i = 0; i < n; i++) {
+                        keys[i] = ((long) stockLedger.availableOrZero(posting.ids[i]) << 32) | i;
+                    }
+                    Arrays.sort(keys, 0, n);
+                    for (int i = 0; i < count; i++) {
+                        int rank = descending ? n - 1 - (from + i) : from + i;
+                        page[i] = posting.ids[(int) keys[rank]];
+                    }
+                } finally {
+                    scratchPool.giveBack(keys);
+                }
+            }
+        }
+        return page;
+    }
+
+    private static void slice(long[] ordered, boolean descending, int from, long[] page) {
+        if (!descending) {
+            System.arraycopy(ordered, from, page, 0, page.length);
+            return;
+        }
+        int last = ordered.length - 1;
+        for (int i = 0; i < page.length; i++) {
+            page[i] = ordered[last - (from + i)];
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Maintenance
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void onProductSaved(Product product) {
+        index(product.getId(), product.getCategory(), cents(product.getPrice()), versionOf(product.getVersion()));
+    }
+
+    @Override
+    public void onProductDeleted(Long productId) {
+        writeLock.lock();
+        try {
+            IndexedProduct old = indexed.remove(productId);
+            if (old != null) {
+                removeFromPosting(productId, old);
+            }
+            deleted.add(productId);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Bulk repricing: re-read category and price of the touched rows
+    @Override
+    public void onProductsChanged(Collection<Long> productIds) {
+        Map<Long, IndexedProduct> current = new HashMap<>();
+        namedJdbcTemplate.query("SELECT id, category, price, version FROM products WHERE id IN (:ids)",
+                Map.of("ids", productIds),
+                rs -> {
+                    current.put(rs.getLong(1), new IndexedProduct(rs.getString(2), cents(rs.getBigDecimal(3)),
+                            rs.getLong(4)));
+                });
+        for (Long id : productIds) {
+            IndexedProduct row = current.get(id);
+            if (row == null) {
+                onProductDeleted(id);
+            } else {
+                index(id, row.category, row.priceCents, row.version);
+            }
+        }
+    }
+
+    private void index(Long productId, String category, long priceCents, long version) {
+        writeLock.lock();
+        try {
+            if (deleted.contains(productId)) {
+                return; // committed before the delete, reported after it
+            }
+            IndexedProduct old = indexed.get(productId);
+            if (old != null) {
+                if (version <= old.version) {
+                    return; // an older row than the one indexed
+                }
+                if (old.category.equals(category) && old.priceCents == priceCents) {
+                    indexed.put(productId, new IndexedProduct(category, priceCents, version));
+                    return;
+                }
+                removeFromPosting(productId, old);
+            }
+            IndexedProduct entry = new IndexedProduct(category, priceCents, version);
+            indexed.put(productId, entry);
+            Posting posting = postings.getOrDefault(category, Posting.EMPTY);
+            postings.put(category, posting.with(productId, priceCents));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void removeFromPosting(Long productId, IndexedProduct old) {
+        Posting posting = postings.get(old.category);
+        if (posting == null) {
+            return;
+        }
+        Posting updated = posting.without(productId, old.priceCents);
+        if (updated.ids.length == 0) {
+            postings.remove(old.category);
+        } else {
+            postings.put(old.category, updated);
+        }
+    }
+
+    /*
+     * Full build from the table: ids are collected per category into
+     * primitive arrays and sorted once, instead of n copy-on-write inserts.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        writeLock.lock();
+        try {
+            Map<String, LongArrayBuilder> idsByCategory = new HashMap<>();
+            indexed.clear();
+            jdbcTemplate.query("SELECT id, category, price, version FROM products", rs -> {
+                long id = rs.getLong(1);
+                String category = rs.getString(2);
+                long price = cents(rs.getBigDecimal(3));
+                indexed.put(id, new IndexedProduct(category, price, rs.getLong(4)));
+                idsByCategory.computeIfAbsent(category, c -> new LongArrayBuilder()).add(id);
+            });
+
+            postings.clear();
+            idsByCategory.forEach((category, builder) -> {
+                long[] ids = builder.toSortedArray();
+                long[] packed = new long[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    packed[i] = (indexed.get(ids[i]).priceCents << POSITION_BITS) | i;
+                }
+                Arrays.sort(packed);
+                long[] byPrice = new long[ids.length];
+                long[] prices = new long[ids.length];
+                for (int i = 0; i < packed.length; i++) {
+                    int position = (int) (packed[i] & ((1L << POSITION_BITS) - 1));
+                    byPrice[i] = ids[position];
+                    prices[i] = packed[i] >>> POSITION_BITS;
+                }
+                postings.put(category, new Posting(ids, byPrice, prices));
+            });
+            ready = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static long versionOf(Long version) {
+        return version == null ? 0 : version;
+    }
+
+    private static long cents(BigDecimal price) {
+        return price == null ? 0 : price.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+    }
+
+    public List<String> categories() {
+        return postings.keySet().stream().sorted().toList();
+    }
+
+    // ---------------------------------------------------------------------
+    // Supporting structures
+    // ---------------------------------------------------------------------
+
+    private record IndexedProduct(String category, long priceCents, long version) {
+    }
+
+    static final class Posting {
+        static final Posting EMPTY = new Posting(new long[0], new long[0], new long[0]);
+
+        final long[] ids; // ascending
+        final long[] byPrice; // ids ordered by (price, id)
+        final long[] prices; // aligned with byPrice
+
+        Posting(long[] ids, long[] byPrice, long[] prices) {
+            this.ids = ids;
+            this.byPrice = byPrice;
+            this.prices = prices;
+        }
+
+        Posting with(long id, long price) {
+            int idPos = Arrays.binarySearch(ids, id);
+            if (idPos >= 0) {
+                return this;
+            }
+            int pricePos = -(pricePosition(id, price) + 1);
+            return new Posting(insert(ids, -(idPos + 1), id), insert(byPrice, pricePos, id),
+                    insert(prices, pricePos, price));
+        }
+
+        Posting without(long id, long price) {
+            int idPos = Arrays.binarySearch(ids, id);
+            if (idPos < 0) {
+                return this;
+            }
+            int pricePos = pricePosition(id, price);
+            if (pricePos < 0) {
+                return this;
+            }
+            return new Posting(remove(ids, idPos), remove(byPrice, pricePos), remove(prices, pricePos));
+        }
+
+        // binary search on (price, id); same contract as Arrays.binarySearch
+        private int pricePosition(long id, long price) {
+            int low = 0;
+            int high = byPrice.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = prices[mid] != price ? Long.compare(prices[mid], price) : Long.compare(byPrice[mid], id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private static long[] insert(long[] array, int position, long value) {
+            long[] copy = new long[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, position);
+            copy[position] = value;
+            System.arraycopy(array, position, copy, position + 1, array.length - position);
+            return copy;
+        }
+
+        private static long[] remove(long[] array, int position) {
+            long[] copy = new long[array.length - 1];
+            System.arraycopy(array, 0, copy, 0, position);
+            System.arraycopy(array, position + 1, copy, position, array.length - position - 1);
+            return copy;
+        }
+    }
+
+    private static final class LongArrayBuilder {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
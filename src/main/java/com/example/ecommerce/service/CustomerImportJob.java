@@ -0,0 +1,172 @@
+package com.example.ecommerce.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Progress of one bulk customer import. recordsRead is advanced by the thread
+ * reading the upload, everything else by the import's writer; the status
+ * endpoints read both while the upload is still running, hence the atomics.
+ *
+ * committedThroughLine is the last input line whose chunk has been committed:
+ * an upload cut off midway can be resent from the line after it (or resent
+ * whole, the rows already imported come back as duplicates).
+ */
+public class CustomerImportJob {
+
+    public enum Status {
+        RUNNING, COMPLETED, COMPLETED_WITH_REJECTIONS, FAILED
+    }
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final int MAX_REJECTED_ROWS = 100;
+
+    private final String id;
+    private final Format format;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong recordsRead = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong duplicatesInFile = new AtomicLong();
+    private final AtomicLong alreadyRegistered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong committedThroughLine = new AtomicLong();
+    private final List<String> rejectedRows = new CopyOnWriteArrayList<>();
+
+    private volatile Status status = Status.RUNNING;
+    private volatile String error;
+    private volatile LocalDateTime finishedAt;
+    private volatile long elapsedNanos;
+
+    CustomerImportJob(String id, Format format) {
+        this.id = id;
+        this.format = format;
+    }
+
+    void recordRead() {
+        recordsRead.incrementAndGet();
+    }
+
+    void rejectInvalid(long line, String reason) {
+        invalid.incrementAndGet();
+        addRejectedRow(line, reason);
+    }
+
+    void rejectDuplicateInFile(long line, String email, long firstLine) {
+        duplicatesInFile.incrementAndGet();
+        addRejectedRow(line, email + " already appears on line " + firstLine);
+    }
+
+    void rejectAlreadyRegistered(long line, String email) {
+        alreadyRegistered.incrementAndGet();
+        addRejectedRow(line, email + " is already registered");
+    }
+
+    void rejectFailed(long line, String reason) {
+        failed.incrementAndGet();
+        addRejectedRow(line, "not imported: " + reason);
+    }
+
+    private void addRejectedRow(long line, String reason) {
+        if (rejectedRows.size() < MAX_REJECTED_ROWS) {
+            rejectedRows.add("line " + line + ": " + reason);
+        }
+    }
+
+    void chunkDone(int rowsImported, long lastLine) {
+        imported.addAndGet(rowsImported);
+        committedThroughLine.set(lastLine);
+        chunks.incrementAndGet();
+    }
+
+    void finish(String failure) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        finishedAt = LocalDateTime.now();
+        error = failure;
+        if (failure != null) {
+            status = Status.FAILED;
+        } else {
+            status = invalid.get() + failed.get() == 0 ? Status.COMPLETED : Status.COMPLETED_WITH_REJECTIONS;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getRecordsRead() {
+        return recordsRead.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getInvalid() {
+        return invalid.get();
+    }
+
+    public long getDuplicatesInFile() {
+        return duplicatesInFile.get();
+    }
+
+    public long getAlreadyRegistered() {
+        return alreadyRegistered.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    public long getCommittedThroughLine() {
+        return committedThroughLine.get();
+    }
+
+    // The first MAX_REJECTED_ROWS only; the counters above cover all of them
+    public List<String> getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getElapsedMillis() {
+        long nanos = status == Status.RUNNING ? System.nanoTime() - startNanos : elapsedNanos;
+        return Duration.ofNanos(nanos).toMillis();
+    }
+
+    public long getRecordsPerSecond() {
+        long millis = getElapsedMillis();
+        return millis == 0 ? recordsRead.get() : recordsRead.get() * 1000 / millis;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.exception.InvalidRequestException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Cuts an import upload into records, one at a time, straight off the request
+ * stream: nothing but the current record is held.
+ *
+ * CSV (RFC 4180: quoted fields, "" escapes, line breaks inside quotes) needs a
+ * header naming the columns firstName, lastName, email and address, in any
+ * order; first_name, "First Name" etc. are accepted, other columns ignored.
+ * Fields come back in that order. NDJSON lines are handed over unparsed, the
+ * JSON is parsed by the validation workers.
+ *
+ * A record longer than maxRecordChars is still consumed to its end but comes
+ * back without content and with an error, so one runaway line rejects a row
+ * instead of growing a buffer. Blank lines are skipped.
+ */
+final class CustomerImportReader {
+
+    static final String[] COLUMNS = {"firstName", "lastName", "email", "address"};
+
+    // line: where the record starts in the upload; error set instead of fields/json when unusable
+    record RawRecord(long line, String[] fields, String json, String error) {
+    }
+
+    private final Reader in;
+    private final CustomerImportJob.Format format;
+    private final int maxRecordChars;
+    private final char[] buffer = new char[64 * 1024];
+    private final StringBuilder field = new StringBuilder();
+    private int position;
+    private int limit;
+    private long line = 1;
+    private int[] columnIndex;
+
+    CustomerImportReader(InputStream body, CustomerImportJob.Format format, int maxRecordChars) throws IOException {
+        this.in = new InputStreamReader(body, StandardCharsets.UTF_8);
+        this.format = format;
+        this.maxRecordChars = maxRecordChars;
+        if (peek() == '\uFEFF') {
+            position++; // byte order mark
+        }
+        if (format == CustomerImportJob.Format.CSV) {
+            readHeader();
+        }
+    }
+
+    private void readHeader() throws IOException {
+        List<String> header = new ArrayList<>();
+        String error = readCsvRecord(header);
+        if (error != null || header.isEmpty()) {
+            throw new InvalidRequestException("CSV import needs a header line naming the columns "
+                    + String.join(", ", COLUMNS));
+        }
+        columnIndex = new int[COLUMNS.length];
+        for (int c = 0; c < COLUMNS.length; c++) {
+            columnIndex[c] = -1;
+            for (int i = 0; i < header.size(); i++) {
+                if (normalize(header.get(i)).equals(COLUMNS[c].toLowerCase(Locale.ROOT))) {
+                    columnIndex[c] = i;
+                }
+            }
+            if (columnIndex[c] < 0) {
+                throw new InvalidRequestException("CSV header has no " + COLUMNS[c] + " column");
+            }
+        }
+    }
+
+    private static String normalize(String column) {
+        StringBuilder normalized = new StringBuilder();
+        for (int i = 0; i < column.length(); i++) {
+            char c = column.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    // Null at the end of the upload
+    RawRecord next() throws IOException {
+        while (true) {
+            skipLineBreaks();
+            if (peek() < 0) {
+                return null;
+            }
+            long start = line;
+            if (format == CustomerImportJob.Format.NDJSON) {
+                String error = readLine();
+                if (error != null) {
+                    return new RawRecord(start, null, null, error);
+                }
+                String json = field.toString().strip();
+                if (!json.isEmpty()) {
+                    return new RawRecord(start, null, json, null);
+                }
+                continue;
+            }
+            List<String> values = new ArrayList<>(COLUMNS.length);
+            String error = readCsvRecord(values);
+            if (error != null) {
+                return new RawRecord(start, null, null, error);
+            }
+            if (values.size() == 1 && values.get(0).isBlank()) {
+                continue;
+            }
+            String[] fields = new String[COLUMNS.length];
+            for (int c = 0; c < COLUMNS.length; c++) {
+                fields[c] = columnIndex[c] < values.size() ? values.get(columnIndex[c]) : null;
+            }
+            return new RawRecord(start, fields, null, null);
+        }
+    }
+
+    private void skipLineBreaks() throws IOException {
+        int c;
+        while ((c = peek()) == '\n' || c == '\r') {
+            position++;
+            lineBreak(c);
+        }
+    }
+
+    // One NDJSON line into field; an error if it was too long
+    private String readLine() throws IOException {
+        field.setLength(0);
+        boolean overflow = false;
+        int c;
+        while ((c = read()) >= 0 && c != '\n' && c != '\r') {
+            if (field.length() < maxRecordChars) {
+                field.append((char) c);
+            } else {
+                overflow = true;
+            }
+        }
+        if (c >= 0) {
+            lineBreak(c);
+        }
+        return overflow ? tooLong() : null;
+    }
+
+    // One CSV record into values; an error if it was too long
+    private String readCsvRecord(List<String> values) throws IOException {
+        long start = line;
+        field.setLength(0);
+        int length = 0;
+        boolean quoted = false;
+        boolean overflow = false;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                if (quoted) {
+                    throw new InvalidRequestException("Unterminated quoted field in the record starting on line "
+                            + start);
+                }
+                break;
+            }
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                    position++;
+                } else if (c == '\n' || c == '\r') {
+                    lineBreak(c);
+                    c = '\n';
+                }
+            } else if (c == ',') {
+                // separators count too: a line of nothing but commas must not grow values
+                if (++length > maxRecordChars) {
+                    overflow = true;
+                    values.clear();
+                } else if (!overflow) {
+                    values.add(field.toString().strip());
+                }
+                field.setLength(0);
+                continue;
+            } else if (c == '\n' || c == '\r') {
+                lineBreak(c);
+                break;
+            } else if (c == '"' && field.toString().isBlank()) {
+                field.setLength(0);
+                quoted = true;
+                continue;
+            }
+            if (++length > maxRecordChars) {
+                overflow = true;
+                field.setLength(0);
+                values.clear();
+            } else if (!overflow) {
+                field.append((char) c);
+            }
+        }
+        if (overflow) {
+            return tooLong();
+        }
+        values.add(field.toString().strip());
+        field.setLength(0);
+        return null;
+    }
+
+    private String tooLong() {
+        return "record longer than " + maxRecordChars + " characters";
+    }
+
+    // \r\n counts once
+    private void lineBreak(int c) throws IOException {
+        if (c == '\r' && peek() == '\n') {
+            position++;
+        }
+        line++;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c >= 0) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+}
@@ -0,0 +1,480 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Customer;
+import com.example.ecommerce.exception.AdmissionRejectedException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/*
+ * Bulk customer import, streamed through a pipeline instead of one
+ * POST /api/customer (a findByEmail plus an INSERT) per record:
+ *
+ * read -> validate (parallel) -> dedupe -> batched INSERT (one transaction per chunk)
+ *
+ * - the request thread reads the upload with CustomerImportReader and cuts it
+ * into chunks of chunkSize records
+ * - each chunk is parsed and validated on the validation pool, several chunks
+ * at a time
+ * - the chunk futures go through a queue of queueCapacity, in upload order, to
+ * the import's single writer. A full queue blocks the reader, so a slow
+ * database slows down the upload rather than piling up records
+ * - the writer drops emails already seen in the chunk, asks the
+ * EmailBloomFilter about the rest and checks only its "maybe" answers with one
+ * SELECT ... WHERE email IN (...), then inserts the chunk with a JDBC batch
+ *
+ * Memory: per import at most queueCapacity + 3 chunks exist (one being read,
+ * one waiting for queue space, one being written), whatever the upload size.
+ * Duplicates across chunks are not remembered in memory: the earlier chunk is
+ * committed before the later one is checked, so the database catches them
+ * (they are reported as already registered).
+ *
+ * The unique constraint on customers.email stays the arbiter, as for single
+ * signups: a chunk whose batch hits it (an email registered concurrently) is
+ * rolled back and retried row by row. After each commit the chunk is added to
+ * the EmailBloomFilter, EmailLookupCache and CustomerSearchIndex, like
+ * CustomerService does for one customer and under the same EmailLocks
+ * stripes.
+ */
+@Service
+public class CustomerImportService {
+
+    private static final String INSERT_SQL = "INSERT INTO customers "
+            + "(first_name, last_name, email, address, created_at, updated_at, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, 0)";
+    private static final int MAX_FIELD_LENGTH = 255;
+    private static final int MAX_RETAINED_JOBS = 100;
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s.]+(\\.[^@\\s.]+)+");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EmailBloomFilter emailFilter;
+
+    @Autowired
+    private EmailLookupCache emailLookupCache;
+
+    @Autowired
+    private CustomerSearchIndex customerSearchIndex;
+
+    @Autowired
+    private EmailLocks emailLocks;
+
+    @Value("${app.customers.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.customers.import.validation-threads:4}")
+    private int validationThreads;
+
+    @Value("${app.customers.import.queue-capacity:4}")
+    private int queueCapacity;
+
+    @Value("${app.customers.import.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${app.customers.import.max-record-chars:4096}")
+    private int maxRecordChars;
+
+    private record ImportRow(long line, String firstName, String lastName, String email, String address) {
+    }
+
+    private record Rejection(long line, String reason) {
+    }
+
+    // lastLine: the line the chunk's last record starts on; null chunk = end of upload
+    private record Chunk(List<ImportRow> rows, List<Rejection> rejections, long lastLine) {
+    }
+
+    private static final CompletableFuture<Chunk> END = CompletableFuture.completedFuture(null);
+
+    private final ConcurrentHashMap<String, CustomerImportJob> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> jobOrder = new ConcurrentLinkedQueue<>();
+
+    private Semaphore admissions;
+    private ExecutorService validationPool;
+    private ExecutorService writerPool;
+
+    @PostConstruct
+    public void init() {
+        if (chunkSize < 1 || validationThreads < 1 || queueCapacity < 1 || maxConcurrent < 1 || maxRecordChars < 1) {
+            throw new IllegalStateException("app.customers.import settings must all be positive");
+        }
+        admissions = new Semaphore(maxConcurrent);
+        // work is bounded by the import queues, not by the pools
+        validationPool = pool(validationThreads, "customer-import-validate");
+        writerPool = pool(maxConcurrent, "customer-import-writer");
+    }
+
+    private static ExecutorService pool(int threads, String name) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * Runs on the request thread until the whole upload is read and written,
+     * then returns the finished job. While it runs the job is visible through
+     * getJob()/getJobs(). A CSV without the required header fails before any
+     * job is created (IllegalArgumentException).
+     */
+    public CustomerImportJob importCustomers(InputStream body, CustomerImportJob.Format format) throws IOException {
+        if (!admissions.tryAcquire()) {
+            throw new AdmissionRejectedException("Too many customer imports running, retry later", 30);
+        }
+        try {
+            CustomerImportReader reader = new CustomerImportReader(body, format, maxRecordChars);
+            CustomerImportJob job = new CustomerImportJob(UUID.randomUUID().toString(), format);
+            jobs.put(job.getId(), job);
+            jobOrder.add(job.getId());
+            evictOldJobs();
+
+            BlockingQueue<CompletableFuture<Chunk>> pipeline = new ArrayBlockingQueue<>(queueCapacity);
+            CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> write(job, pipeline), writerPool);
+            String failure = null;
+            try {
+                read(job, reader, pipeline, writer);
+            } catch (IOException | RuntimeException e) {
+                failure = e.getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "interrupted";
+            }
+            try {
+                offer(pipeline, END, writer);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "interrupted";
+            } catch (CompletionException e) {
+                failure = "writer failed: " + e.getCause().getMessage();
+                System.err.println("Customer import " + job.getId() + " failed: " + e.getCause().getMessage());
+            }
+            if (failure != null) {
+                failure = "Import stopped, committed through line " + job.getCommittedThroughLine() + ": " + failure;
+            }
+            job.finish(failure);
+            return job;
+        } finally {
+            admissions.release();
+        }
+    }
+
+    public Optional<CustomerImportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    // Newest first, running ones included
+    public List<CustomerImportJob> getJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(CustomerImportJob::getStartedAt).reversed())
+                .toList();
+    }
+
+    private void read(CustomerImportJob job, CustomerImportReader reader,
+            BlockingQueue<CompletableFuture<Chunk>> pipeline, CompletableFuture<Void> writer)
+            throws IOException, InterruptedException {
+        List<CustomerImportReader.RawRecord> records = new ArrayList<>(chunkSize);
+        CustomerImportReader.RawRecord record;
+        while ((record = reader.next()) != null) {
+            job.recordRead();
+            records.add(record);
+            if (records.size() == chunkSize) {
+                if (!enqueue(pipeline, records, writer)) {
+                    return; // the writer is gone, reading on is pointless
+                }
+                records = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!records.isEmpty()) {
+            enqueue(pipeline, records, writer);
+        }
+    }
+
+    private boolean enqueue(BlockingQueue<CompletableFuture<Chunk>> pipeline,
+            List<CustomerImportReader.RawRecord> records, CompletableFuture<Void> writer) throws InterruptedException {
+        return offer(pipeline, CompletableFuture.supplyAsync(() -> validate(records), validationPool), writer);
+    }
+
+    // Waits for queue space while the writer is alive; false once it is gone
+    private static boolean offer(BlockingQueue<CompletableFuture<Chunk>> pipeline, CompletableFuture<Chunk> chunk,
+            CompletableFuture<Void> writer) throws InterruptedException {
+        while (!pipeline.offer(chunk, 1, TimeUnit.SECONDS)) {
+            if (writer.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------
+    // Validation (validation pool)
+    // ---------------------------------------------------------------------
+
+    private Chunk validate(List<CustomerImportReader.RawRecord> records) {
+        List<ImportRow> rows = new ArrayList<>(records.size());
+        List<Rejection> rejections = new ArrayList<>();
+        for (CustomerImportReader.RawRecord record : records) {
+            String[] fields = record.error() == null && record.json() != null ? parseJson(record) : record.fields();
+            String error = record.error() != null ? record.error() : fields == null ? "not a JSON object" : check(fields);
+            if (error != null) {
+                rejections.add(new Rejection(record.line(), error));
+            } else {
+                rows.add(new ImportRow(record.line(), fields[0], fields[1], fields[2], fields[3]));
+            }
+        }
+        return new Chunk(rows, rejections, records.get(records.size() - 1).line());
+    }
+
+    // Fields in CustomerImportReader.COLUMNS order, null if the line is not a JSON object
+    private String[] parseJson(CustomerImportReader.RawRecord record) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(record.json());
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        if (node == null || !node.isObject()) {
+            return null;
+        }
+        String[] fields = new String[CustomerImportReader.COLUMNS.length];
+        for (int c = 0; c < fields.length; c++) {
+            JsonNode value = node.get(CustomerImportReader.COLUMNS[c]);
+            // a number or boolean is rejected as missing rather than silently converted
+            fields[c] = value != null && value.isTextual() ? value.asText().strip() : null;
+        }
+        return fields;
+    }
+
+    private static String check(String[] fields) {
+        for (int c = 0; c < fields.length; c++) {
+            if (fields[c] == null || fields[c].isEmpty()) {
+                return CustomerImportReader.COLUMNS[c] + " is required";
+            }
+            if (fields[c].length() > MAX_FIELD_LENGTH) {
+                return CustomerImportReader.COLUMNS[c] + " is longer than " + MAX_FIELD_LENGTH + " characters";
+            }
+        }
+        if (!EMAIL.matcher(fields[2]).matches()) {
+            return "'" + fields[2] + "' is not a valid email";
+        }
+        return null;
+    }
+
+    // ---------------------------------------------------------------------
+    // Writing (one writer per import, chunks in upload order)
+    // ---------------------------------------------------------------------
+
+    private void write(CustomerImportJob job, BlockingQueue<CompletableFuture<Chunk>> pipeline) {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = pipeline.take().join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted");
+            }
+            if (chunk == null) {
+                return;
+            }
+            writeChunk(job, chunk);
+        }
+    }
+
+    private void writeChunk(CustomerImportJob job, Chunk chunk) {
+        for (Rejection rejection : chunk.rejections()) {
+            job.rejectInvalid(rejection.line(), rejection.reason());
+        }
+
+        Map<String, Long> firstLine = new HashMap<>();
+        List<ImportRow> unique = new ArrayList<>(chunk.rows().size());
+        for (ImportRow row : chunk.rows()) {
+            Long first = firstLine.putIfAbsent(row.email(), row.line());
+            if (first != null) {
+                job.rejectDuplicateInFile(row.line(), row.email(), first);
+            } else {
+                unique.add(row);
+            }
+        }
+
+        // until the filter is loaded its "no" proves nothing, so every email is checked
+        boolean filterLoaded = emailFilter.isLoaded();
+        List<String> maybeRegistered = new ArrayList<>();
+        for (ImportRow row : unique) {
+            if (!filterLoaded || emailFilter.mightContain(row.email())) {
+                maybeRegistered.add(row.email());
+            }
+        }
+        Set<String> registered = maybeRegistered.isEmpty() ? Set.of() : new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT email FROM customers WHERE email IN (:emails)", Map.of("emails", maybeRegistered),
+                String.class));
+        List<ImportRow> fresh = new ArrayList<>(unique.size());
+        for (ImportRow row : unique) {
+            if (registered.contains(row.email())) {
+                job.rejectAlreadyRegistered(row.line(), row.email());
+            } else {
+                fresh.add(row);
+            }
+        }
+
+        List<ImportRow> inserted = fresh;
+        if (!fresh.isEmpty()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            try {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, fresh,
+                        fresh.size(), (ps, row) -> {
+                            ps.setString(1, row.firstName());
+                            ps.setString(2, row.lastName());
+                            ps.setString(3, row.email());
+                            ps.setString(4, row.address());
+                            ps.setTimestamp(5, now);
+                            ps.setTimestamp(6, now);
+                        }));
+            } catch (DataIntegrityViolationException e) {
+                inserted = insertOneByOne(job, fresh, now);
+            } catch (RuntimeException e) {
+                for (ImportRow row : fresh) {
+                    job.rejectFailed(row.line(), e.getMessage());
+                }
+                inserted = List.of();
+            }
+            publish(inserted);
+        }
+        job.chunkDone(inserted.size(), chunk.lastLine());
+    }
+
+    // The batch hit a constraint: find out which rows, each in its own auto-committed statement
+    private List<ImportRow> insertOneByOne(CustomerImportJob job, List<ImportRow> rows, Timestamp now) {
+        List<ImportRow> inserted = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, row.firstName(), row.lastName(), row.email(), row.address(), now, now);
+                inserted.add(row);
+            } catch (DataIntegrityViolationException e) {
+                Integer holders = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM customers WHERE email = ?",
+                        Integer.class, row.email());
+                if (holders != null && holders > 0) {
+                    job.rejectAlreadyRegistered(row.line(), row.email());
+                } else {
+                    job.rejectFailed(row.line(), e.getMostSpecificCause().getMessage());
+                }
+            } catch (RuntimeException e) {
+                job.rejectFailed(row.line(), e.getMessage());
+            }
+        }
+        return inserted;
+    }
+
+    /*
+     * What CustomerService does after committing one new customer, once per
+     * chunk and under the same email stripe locks: a customer deleted (or
+     * given another email) between the batch commit and this point is no
+     * longer found by the read-back, so it is not put back into the filter
+     * and the search index after its delete has taken it out.
+     */
+    private void publish(List<ImportRow> inserted) {
+        if (inserted.isEmpty()) {
+            return;
+        }
+        List<String> emails = new ArrayList<>(inserted.size());
+        for (ImportRow row : inserted) {
+            emails.add(row.email());
+        }
+        List<ReentrantLock> locks = emailLocks.lockAll(emails);
+        try {
+            // the ids were generated by the batch; one IN query fetches them for the search index
+            List<Customer> customers = namedJdbcTemplate.query(
+                    "SELECT id, first_name, last_name, email FROM customers WHERE email IN (:emails)",
+                    Map.of("emails", emails), (rs, rowNum) -> {
+                        Customer customer = new Customer();
+                        customer.setId(rs.getLong(1));
+                        customer.setFirstName(rs.getString(2));
+                        customer.setLastName(rs.getString(3));
+                        customer.setEmail(rs.getString(4));
+                        return customer;
+                    });
+            for (Customer customer : customers) {
+                emailFilter.add(customer.getEmail());
+            }
+            for (String email : emails) {
+                emailLookupCache.invalidate(email); // a cached "no such customer"
+            }
+            customerSearchIndex.onCustomersSaved(customers);
+        } finally {
+            emailLocks.unlockAll(locks);
+        }
+    }
+
+    // Keep the status of the most recent jobs only
+    private void evictOldJobs() {
+        while (jobOrder.size() > MAX_RETAINED_JOBS) {
+            String oldest = jobOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            CustomerImportJob job = jobs.get(oldest);
+            if (job != null && job.getStatus() == CustomerImportJob.Status.RUNNING) {
+                jobOrder.add(oldest); // never forget a running job
+                return;
+            }
+            jobs.remove(oldest);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        validationPool.shutdownNow();
+        writerPool.shutdownNow();
+    }
+}
@@ -0,0 +1,724 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.CustomerSuggestion;
+import com.example.ecommerce.entity.Customer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * In-memory customer search over first name, last name and email.
+ *
+ * Search (substring, like the old LIKE '%term%' pair, but indexed):
+ * - every customer is a document with an int doc id; the text " first last "
+ * and " email " is cut into trigrams, and each trigram has a postings list of
+ * doc ids in ascending order
+ * - a query of 3+ characters intersects the postings of its trigrams,
+ * smallest list first, and verifies the surviving candidates against the
+ * text (trigrams are a superset filter)
+ * - results are ranked: exact field match, field prefix, word prefix ("smi"
+ * in "john smith", "acme" in "jo@acme.com"), then any other substring; ties
+ * go to the shorter text, then the lower id. At most MAX_VERIFY candidates
+ * are verified, so a term matching a large part of the table ranks within
+ * that sample.
+ * - a query without any substring match falls back to trigram overlap, which
+ * catches small typos
+ * - queries shorter than a trigram are answered from the prefix trie
+ *
+ * Autocomplete: a path-compressed trie over first name, last name, "first
+ * last" and email. Completions come out of a shortest-key-first walk below
+ * the prefix node (a small heap keyed by key length, since compressed edges
+ * have different lengths), so "ann" ranks before "annabelle" and the walk
+ * stops after `limit` distinct customers; the cost is the prefix length plus
+ * the nodes visited and their children, not the number of customers. Suggestions are built from the index, no query.
+ *
+ * Like ProductSearchIndex: an updated customer gets a fresh doc id and its old
+ * doc becomes a tombstone (docCustomer[doc] == 0); postings are compacted
+ * once tombstones make up a quarter of the index. Queries take the read lock,
+ * CustomerService writes (after commit) the write lock.
+ */
+@Component
+public class CustomerSearchIndex {
+
+    private static final int MAX_VERIFY = 10_000;
+    private static final int MAX_FUZZY_POSTING = 100_000;
+    private static final double MIN_TRIGRAM_OVERLAP = 0.4;
+    private static final int MIN_TOMBSTONES_FOR_COMPACTION = 1024;
+
+    private static final double EXACT = 4;
+    private static final double FIELD_PREFIX = 3;
+    private static final double WORD_PREFIX = 2;
+    private static final double SUBSTRING = 1;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // all guarded by lock
+    private final Map<Long, Posting> trigramPostings = new HashMap<>();
+    private final Map<Long, Integer> customerDoc = new HashMap<>();
+    private long[] docCustomer = new long[1024]; // 0 = deleted
+    private String[] docFirstName = new String[1024];
+    private String[] docLastName = new String[1024];
+    private String[] docEmail = new String[1024];
+    private int docCount; // doc ids handed out, live and deleted
+    private int liveDocs;
+    private final Trie prefixes = new Trie();
+
+    private volatile boolean ready;
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong autocompletes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    public record Hit(long customerId, double score) {
+    }
+
+    private record Ranked(int doc, double score, int length) {
+    }
+
+    // best first: score, then shorter text, then lower doc (= older customer)
+    private static final Comparator<Ranked> BEST_FIRST = Comparator.comparingDouble(Ranked::score).reversed()
+            .thenComparingInt(Ranked::length)
+            .thenComparingInt(Ranked::doc);
+
+    // ---------------------------------------------------------------------
+    // Query
+    // ---------------------------------------------------------------------
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<Hit> search(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        searches.incrementAndGet();
+        lock.readLock().lock();
+        try {
+            if (q.length() < 3) {
+                return prefixHits(q, limit);
+            }
+            List<Hit> hits = substringHits(q, limit);
+            return hits.isEmpty() ? fuzzyHits(q, limit) : hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<CustomerSuggestion> autocomplete(String prefix, int limit) {
+        String p = normalize(prefix);
+        if (p.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        autocompletes.incrementAndGet();
+        lock.readLock().lock();
+        try {
+            List<CustomerSuggestion> suggestions = new ArrayList<>();
+            for (long customerId : prefixes.complete(p, limit)) {
+                int doc = customerDoc.get(customerId);
+                suggestions.add(new CustomerSuggestion(customerId, docFirstName[doc], docLastName[doc],
+                        docEmail[doc]));
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> prefixHits(String q, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        for (long customerId : prefixes.complete(q, limit)) {
+            hits.add(new Hit(customerId, rank(customerDoc.get(customerId), q)));
+        }
+        return hits;
+    }
+
+    private List<Hit> substringHits(String q, int limit) {
+        Set<Long> grams = trigrams(q, false);
+        Posting[] lists = new Posting[grams.size()];
+        int n = 0;
+        for (long gram : grams) {
+            Posting posting = trigramPostings.get(gram);
+            if (posting == null) {
+                return List.of(); // some trigram occurs nowhere
+            }
+            lists[n++] = posting;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(posting -> posting.size));
+
+        PriorityQueue<Ranked> top = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        int[] cursors = new int[lists.length];
+        int verified = 0;
+        Posting smallest = lists[0];
+        for (int i = 0; i < smallest.size && verified < MAX_VERIFY; i++) {
+            int doc = smallest.docs[i];
+            if (docCustomer[doc] == 0 || !inAll(lists, cursors, doc)) {
+                continue;
+            }
+            verified++;
+            double score = rank(doc, q);
+            if (score > 0) {
+                offer(top, new Ranked(doc, score, textLength(doc)), limit);
+            }
+        }
+        return drain(top);
+    }
+
+    // Galloping intersection: every other list advances monotonically
+    private static boolean inAll(Posting[] lists, int[] cursors, int doc) {
+        for (int j = 1; j < lists.length; j++) {
+            Posting posting = lists[j];
+            int index = Arrays.binarySearch(posting.docs, cursors[j], posting.size, doc);
+            if (index < 0) {
+                cursors[j] = -index - 1;
+                return false;
+            }
+            cursors[j] = index;
+        }
+        return true;
+    }
+
+    private List<Hit> fuzzyHits(String q, int limit) {
+        Set<Long> grams = trigrams(q, true);
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (long gram : grams) {
+            Posting posting = trigramPostings.get(gram);
+            if (posting == null || posting.size > MAX_FUZZY_POSTING) {
+                continue; // too common to say anything about a typo
+            }
+            for (int i = 0; i < posting.size; i++) {
+                if (docCustomer[posting.docs[i]] != 0) {
+                    shared.merge(posting.docs[i], 1, Integer::sum);
+                }
+            }
+        }
+        PriorityQueue<Ranked> top = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        for (Map.Entry<Integer, Integer> entry : shared.entrySet()) {
+            double overlap = (double) entry.getValue() / grams.size();
+            if (overlap >= MIN_TRIGRAM_OVERLAP) {
+                // always below SUBSTRING: a typo match never outranks a real one
+                offer(top, new Ranked(entry.getKey(), overlap * SUBSTRING * 0.99, textLength(entry.getKey())),
+                        limit);
+            }
+        }
+        return drain(top);
+    }
+
+    private static void offer(PriorityQueue<Ranked> top, Ranked candidate, int limit) {
+        top.add(candidate);
+        if (top.size() > limit) {
+            top.poll(); // drops the worst
+        }
+    }
+
+    private List<Hit> drain(PriorityQueue<Ranked> top) {
+        List<Ranked> ranked = new ArrayList<>(top);
+        ranked.sort(BEST_FIRST);
+        List<Hit> hits = new ArrayList<>(ranked.size());
+        for (Ranked r : ranked) {
+            hits.add(new Hit(docCustomer[r.doc()], r.score()));
+        }
+        return hits;
+    }
+
+    /*
+     * Case-insensitive without allocating (q is already lower case): this runs
+     * once per verified candidate. Only a query containing a space can span
+     * first and last name, so only then is the full name built.
+     */
+    private double rank(int doc, String q) {
+        String email = nonNull(docEmail[doc]);
+        double score = rank(email, q);
+        if (q.indexOf(' ') >= 0) {
+            return Math.max(score, rank(nonNull(docFirstName[doc]) + " " + nonNull(docLastName[doc]), q));
+        }
+        score = Math.max(score, rank(nonNull(docFirstName[doc]), q));
+        return Math.max(score, rank(nonNull(docLastName[doc]), q));
+    }
+
+    private static double rank(String field, String q) {
+        if (field.length() == q.length() && field.equalsIgnoreCase(q)) {
+            return EXACT;
+        }
+        double best = 0;
+        for (int i = 0; i + q.length() <= field.length(); i++) {
+            if (field.regionMatches(true, i, q, 0, q.length())) {
+                if (i == 0) {
+                    return FIELD_PREFIX;
+                }
+                best = Math.max(best, Character.isLetterOrDigit(field.charAt(i - 1)) ? SUBSTRING : WORD_PREFIX);
+            }
+        }
+        return best;
+    }
+
+    private static String nonNull(String text) {
+        return text == null ? "" : text;
+    }
+
+    private int textLength(int doc) {
+        return length(docFirstName[doc]) + length(docLastName[doc]) + length(docEmail[doc]);
+    }
+
+    // ---------------------------------------------------------------------
+    // Maintenance
+    // ---------------------------------------------------------------------
+
+    public void onCustomerSaved(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            indexCustomer(customer.getId(), customer.getFirstName(), customer.getLastName(), customer.getEmail());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // A bulk-imported chunk under one write lock
+    public void onCustomersSaved(List<Customer> customers) {
+        lock.writeLock().lock();
+        try {
+            for (Customer customer : customers) {
+                indexCustomer(customer.getId(), customer.getFirstName(), customer.getLastName(), customer.getEmail());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void onCustomerDeleted(Long customerId) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = customerDoc.remove(customerId);
+            if (doc != null) {
+                deleteDoc(doc);
+                maybeCompact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            trigramPostings.clear();
+            customerDoc.clear();
+            prefixes.clear();
+            docCount = 0;
+            liveDocs = 0;
+            jdbcTemplate.query("SELECT id, first_name, last_name, email FROM customers ORDER BY id", rs -> {
+                indexCustomer(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4));
+            });
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexCustomer(long customerId, String firstName, String lastName, String email) {
+        Integer existing = customerDoc.get(customerId);
+        if (existing != null) {
+            if (Objects.equals(docFirstName[existing], firstName) && Objects.equals(docLastName[existing], lastName)
+                    && Objects.equals(docEmail[existing], email)) {
+                return; // address change, nothing to reindex
+            }
+            deleteDoc(existing);
+        }
+
+        int doc = docCount++;
+        ensureDocCapacity(docCount);
+        docCustomer[doc] = customerId;
+        docFirstName[doc] = firstName;
+        docLastName[doc] = lastName;
+        docEmail[doc] = email;
+        customerDoc.put(customerId, doc);
+        liveDocs++;
+
+        Set<Long> grams = trigrams(" " + lower(firstName) + " " + lower(lastName) + " ", false);
+        grams.addAll(trigrams(" " + lower(email) + " ", false));
+        for (long gram : grams) {
+            trigramPostings.computeIfAbsent(gram, g -> new Posting()).add(doc);
+        }
+        for (String key : prefixKeys(firstName, lastName, email)) {
+            prefixes.insert(key, customerId);
+        }
+        maybeCompact();
+    }
+
+    private void deleteDoc(int doc) {
+        for (String key : prefixKeys(docFirstName[doc], docLastName[doc], docEmail[doc])) {
+            prefixes.remove(key, docCustomer[doc]);
+        }
+        docCustomer[doc] = 0;
+        docFirstName[doc] = null;
+        docLastName[doc] = null;
+        docEmail[doc] = null;
+        liveDocs--;
+    }
+
+    private static List<String> prefixKeys(String firstName, String lastName, String email) {
+        List<String> keys = new ArrayList<>(4);
+        String first = normalize(firstName);
+        String last = normalize(lastName);
+        for (String key : new String[] { first, last, normalize(first + " " + last), normalize(email) }) {
+            if (!key.isEmpty()) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private void maybeCompact() {
+        int tombstones = docCount - liveDocs;
+        if (tombstones >= MIN_TOMBSTONES_FOR_COMPACTION && tombstones * 4 >= docCount) {
+            compact();
+        }
+    }
+
+    // Drops tombstones and renumbers the live docs in order, so postings stay sorted
+    private void compact() {
+        int[] remap = new int[docCount];
+        int next = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (docCustomer[doc] == 0) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = next;
+                docCustomer[next] = docCustomer[doc];
+                docFirstName[next] = docFirstName[doc];
+                docLastName[next] = docLastName[doc];
+                docEmail[next] = docEmail[doc];
+                customerDoc.put(docCustomer[next], next);
+                next++;
+            }
+        }
+        Arrays.fill(docCustomer, next, docCount, 0);
+        Arrays.fill(docFirstName, next, docCount, null);
+        Arrays.fill(docLastName, next, docCount, null);
+        Arrays.fill(docEmail, next, docCount, null);
+        docCount = next;
+
+        var iterator = trigramPostings.values().iterator();
+        while (iterator.hasNext()) {
+            Posting posting = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < posting.size; i++) {
+                int target = remap[posting.docs[i]];
+                if (target >= 0) {
+                    posting.docs[kept++] = target;
+                }
+            }
+            posting.size = kept;
+            if (kept == 0) {
+                iterator.remove();
+            } else if (kept < posting.docs.length / 4) {
+                posting.docs = Arrays.copyOf(posting.docs, Math.max(kept, 4));
+            }
+        }
+        compactions.incrementAndGet();
+    }
+
+    private void ensureDocCapacity(int capacity) {
+        if (capacity > docCustomer.length) {
+            int newLength = Math.max(capacity, docCustomer.length * 2);
+            docCustomer = Arrays.copyOf(docCustomer, newLength);
+            docFirstName = Arrays.copyOf(docFirstName, newLength);
+            docLastName = Arrays.copyOf(docLastName, newLength);
+            docEmail = Arrays.copyOf(docEmail, newLength);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Text analysis
+    // ---------------------------------------------------------------------
+
+    // lowercase, trimmed, inner whitespace collapsed to one space
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static String lower(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    // three chars packed into a long; padded = word boundaries as spaces, for typo overlap
+    private static Set<Long> trigrams(String text, boolean padded) {
+        String s = padded ? " " + text + " " : text;
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            grams.add((long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    public Map<String, Long> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("documents", (long) liveDocs);
+            stats.put("tombstones", (long) (docCount - liveDocs));
+            stats.put("trigrams", (long) trigramPostings.size());
+            stats.put("trieNodes", (long) prefixes.nodes);
+            stats.put("searches", searches.get());
+            stats.put("autocompletes", autocompletes.get());
+            stats.put("compactions", compactions.get());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Supporting structures
+    // ---------------------------------------------------------------------
+
+    private static final class Posting {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size + (size >> 1) + 1);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    /*
+     * Path-compressed (radix) trie: every edge carries a string, a node with
+     * a single child and no customers of its own is merged into that child,
+     * so the node count stays close to the number of distinct keys. Children
+     * are kept sorted by their first char.
+     */
+    private static final class Trie {
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+        private static final long[] NO_IDS = new long[0];
+
+        private TrieNode root = new TrieNode("");
+        int nodes;
+
+        private static final class TrieNode {
+            String label;
+            TrieNode[] children = NO_CHILDREN;
+            long[] ids = NO_IDS; // customers whose key ends here
+            int idCount;
+
+            TrieNode(String label) {
+                this.label = label;
+            }
+
+            void addId(long id) {
+                if (idCount == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(2, idCount * 2));
+                }
+                ids[idCount++] = id;
+            }
+
+            boolean removeId(long id) {
+                for (int i = 0; i < idCount; i++) {
+                    if (ids[i] == id) {
+                        ids[i] = ids[--idCount];
+                        if (idCount == 0) {
+                            ids = NO_IDS;
+                        }
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            int childIndex(char c) {
+                int low = 0;
+                int high = children.length - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    char midChar = children[mid].label.charAt(0);
+                    if (midChar < c) {
+                        low = mid + 1;
+                    } else if (midChar > c) {
+                        high = mid - 1;
+                    } else {
+                        return mid;
+                    }
+                }
+                return -(low + 1);
+            }
+
+            void insertChild(int at, TrieNode child) {
+                TrieNode[] grown = new TrieNode[children.length + 1];
+                System.arraycopy(children, 0, grown, 0, at);
+                grown[at] = child;
+                System.arraycopy(children, at, grown, at + 1, children.length - at);
+                children = grown;
+            }
+
+            void removeChild(int at) {
+                TrieNode[] shrunk = children.length == 1 ? NO_CHILDREN : new TrieNode[children.length - 1];
+                System.arraycopy(children, 0, shrunk, 0, at);
+                System.arraycopy(children, at + 1, shrunk, at, children.length - at - 1);
+                children = shrunk;
+            }
+        }
+
+        void clear() {
+            root = new TrieNode("");
+            nodes = 0;
+        }
+
+        void insert(String key, long id) {
+            TrieNode node = root;
+            int i = 0;
+            while (i < key.length()) {
+                int index = node.childIndex(key.charAt(i));
+                if (index < 0) {
+                    TrieNode leaf = new TrieNode(key.substring(i));
+                    leaf.addId(id);
+                    node.insertChild(-index - 1, leaf);
+                    nodes++;
+                    return;
+                }
+                TrieNode child = node.children[index];
+                int common = commonPrefix(child.label, key, i);
+                if (common < child.label.length()) {
+                    // split the edge: node -> mid(common part) -> child(rest)
+                    TrieNode mid = new TrieNode(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    mid.children = new TrieNode[] { child };
+                    node.children[index] = mid;
+                    nodes++;
+                    child = mid;
+                }
+                node = child;
+                i += common;
+            }
+            node.addId(id);
+        }
+
+        void remove(String key, long id) {
+            List<TrieNode> path = new ArrayList<>();
+            TrieNode node = root;
+            int i = 0;
+            while (i < key.length()) {
+                int index = node.childIndex(key.charAt(i));
+                if (index < 0) {
+                    return;
+                }
+                TrieNode child = node.children[index];
+                if (!key.startsWith(child.label, i)) {
+                    return;
+                }
+                path.add(node);
+                node = child;
+                i += child.label.length();
+            }
+            if (!node.removeId(id)) {
+                return;
+            }
+            // prune empty leaves, then merge single-child pass-through nodes
+            for (int p = path.size() - 1; p >= 0 && node != root; p--) {
+                TrieNode parent = path.get(p);
+                if (node.idCount == 0 && node.children.length == 0) {
+                    parent.removeChild(parent.childIndex(node.label.charAt(0)));
+                    nodes--;
+                } else if (node.idCount == 0 && node.children.length == 1) {
+                    TrieNode only = node.children[0];
+                    node.label = node.label + only.label;
+                    node.children = only.children;
+                    node.ids = only.ids;
+                    node.idCount = only.idCount;
+                    nodes--;
+                    break;
+                } else {
+                    break;
+                }
+                node = parent;
+            }
+        }
+
+        // Up to limit distinct ids below prefix, shortest keys first
+        Set<Long> complete(String prefix, int limit) {
+            Set<Long> out = new LinkedHashSet<>();
+            TrieNode node = root;
+            int i = 0;
+            while (i < prefix.length()) {
+                int index = node.childIndex(prefix.charAt(i));
+                if (index < 0) {
+                    return out;
+                }
+                TrieNode child = node.children[index];
+                int common = commonPrefix(child.label, prefix, i);
+                if (i + common == prefix.length()) {
+                    node = child; // the prefix ends on or inside this edge
+                    break;
+                }
+                if (common < child.label.length()) {
+                    return out;
+                }
+                node = child;
+                i += common;
+            }
+            collect(node, limit, out);
+            return out;
+        }
+
+        // key length below the start node; order keeps equal lengths in trie order
+        private record Frontier(TrieNode node, int keyLength, long order) {
+        }
+
+        private static void collect(TrieNode start, int limit, Set<Long> out) {
+            PriorityQueue<Frontier> frontier = new PriorityQueue<>(
+                    Comparator.comparingInt(Frontier::keyLength).thenComparingLong(Frontier::order));
+            long order = 0;
+            frontier.add(new Frontier(start, 0, order++));
+            while (!frontier.isEmpty() && out.size() < limit) {
+                Frontier next = frontier.poll();
+                TrieNode node = next.node();
+                for (int i = 0; i < node.idCount && out.size() < limit; i++) {
+                    out.add(node.ids[i]);
+                }
+                for (TrieNode child : node.children) {
+                    frontier.add(new Frontier(child, next.keyLength() + child.label.length(), order++));
+                }
+            }
+        }
+
+        private static int commonPrefix(String label, String key, int from) {
+            int max = Math.min(label.length(), key.length() - from);
+            int n = 0;
+            while (n < max && label.charAt(n) == key.charAt(from + n)) {
+                n++;
+            }
+            return n;
+        }
+    }
+}
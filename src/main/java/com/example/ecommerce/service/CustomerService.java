@@ -1,52 +1,106 @@
 package com.example.ecommerce.service;
 
 import org.springframework.stereotype.Service;
+import com.example.ecommerce.dto.CustomerSuggestion;
 import com.example.ecommerce.entity.Customer;
 import com.example.ecommerce.repository.CustomerRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Async;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.ecommerce.exception.CustomerAlreadyExistsException;
 import com.example.ecommerce.exception.CustomerNotFoundException;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.exception.ServiceUnavailableException;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
+/*
+ * No service-wide lock: reads never lock, and writes only lock the stripe of
+ * the email they register (two stripes for an email change), so signups of
+ * different emails run in parallel.
+ *
+ * Uniqueness is enforced by the unique constraint on customers.email. The
+ * EmailBloomFilter decides whether a duplicate check is needed at all: for a
+ * new email (the common case) it answers "certainly not registered" and the
+ * INSERT goes ahead without a findByEmail query. The stripe lock is held
+ * until the commit, so a concurrent signup with the same email waits and then
+ * finds the committed row instead of failing on the constraint.
+ */
 @Service
 public class CustomerService {
 
+    private static final long INDEX_RETRY_AFTER_SECONDS = 5;
+
     @Autowired
     private CustomerRepository customerRepository;
 
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
-    private final ConcurrentHashMap<String, Customer> emailCache = new ConcurrentHashMap<>();
+    @Autowired
+    private EmailBloomFilter emailFilter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EmailLookupCache emailLookupCache;
+
+    @Autowired
+    private CustomerSearchIndex customerSearchIndex;
+
+    @Autowired
+    private CustomerImportService customerImportService;
+
+    @Autowired
+    private EmailLocks emailLocks;
 
-    @Transactional
     public Customer createCustomer(Customer customer) {
-        rwLock.writeLock().lock();
+        String email = customer.getEmail();
+        if (email == null) {
+            throw new InvalidRequestException("Email is required");
+        }
+        ReentrantLock lock = emailLocks.forEmail(email);
+        lock.lock();
         try {
-            if (customerRepository.findByEmail(customer.getEmail()).isPresent())
-                throw new CustomerAlreadyExistsException(customer.getEmail());
-            Customer savedCustomer = customerRepository.save(customer);
-            emailCache.put(savedCustomer.getEmail(), savedCustomer);
+            if (emailFilter.mightContain(email) && customerRepository.findByEmail(email).isPresent()) {
+                throw new CustomerAlreadyExistsException(email);
+            }
+            Customer savedCustomer;
+            try {
+                savedCustomer = transactionTemplate.execute(status -> customerRepository.saveAndFlush(customer));
+            } catch (DataIntegrityViolationException e) {
+                throw duplicateOr(email, null, e);
+            }
+            emailFilter.add(email);
+            emailLookupCache.invalidate(email); // a cached "no such customer"
+            customerSearchIndex.onCustomerSaved(savedCustomer);
             return savedCustomer;
         } finally {
-            rwLock.writeLock().unlock();
+            lock.unlock();
         }
+    }
 
+    // The constraint fired: a duplicate email if another customer has it, otherwise some other column
+    private RuntimeException duplicateOr(String email, Long ownId, DataIntegrityViolationException e) {
+        Optional<Customer> holder = customerRepository.findByEmail(email);
+        if (holder.isPresent() && !holder.get().getId().equals(ownId)) {
+            return new CustomerAlreadyExistsException(email);
+        }
+        return e;
     }
     
     public Optional<Customer> getCustomer(Long id) {
-        rwLock.readLock().lock();
-        try {
-            return customerRepository.findById(id);
-        } finally {
-            rwLock.readLock().unlock();
-        }
+        return customerRepository.findById(id);
         /*
          * you should handle the Optional<Customer> in the controller layer, because:
          * 
@@ -59,31 +113,23 @@ public class CustomerService {
          */
     }
     
+    /*
+     * Through the EmailLookupCache, misses included. Once the EmailBloomFilter
+     * is loaded, an email it has never seen is answered without a query.
+     */
     public Optional<Customer> getCustomerByEmail(String email) {
-        rwLock.readLock().lock();
-        try {
-            Customer cachedCustomer = emailCache.get(email);
-            if (cachedCustomer != null) {
-                return Optional.of(cachedCustomer);
-            }
-            Optional<Customer> customer = customerRepository.findByEmail(email);
-            customer.ifPresent(c -> emailCache.put(email, c));
-            return customer;
-        } finally {
-            rwLock.readLock().unlock();
-        }
+        return emailLookupCache.get(email, e -> emailFilter.isLoaded() && !emailFilter.mightContain(e)
+                ? Optional.empty()
+                : customerRepository.findByEmail(e));
+    }
+
+    public Map<String, Long> getEmailCacheStats() {
+        return emailLookupCache.stats();
     }
     
     @Async
     public CompletableFuture<List<Customer>> getAllCustomerAsync() {
-        return CompletableFuture.supplyAsync(() -> {
-            rwLock.readLock().lock();
-            try {
-                return customerRepository.findAll();
-            } finally {
-                rwLock.readLock().unlock();
-            }
-        });
+        return CompletableFuture.supplyAsync(() -> customerRepository.findAll());
 
         /*
          * findAll() can be an expensive operation if there are many records.
@@ -98,57 +144,149 @@ public class CustomerService {
          */
     }
     
-    @Transactional
+    /*
+     * Locks the stripe of the new email (and of the old one if it changes, in
+     * stripe order so two crossing email swaps cannot deadlock).
+     */
     public Customer updateCustomer(Long id, Customer updatedCustomer) {
-        rwLock.writeLock().lock();
+        // Null safety (optional, based on whether fields are required or validated elsewhere)
+        if (updatedCustomer.getEmail() == null || updatedCustomer.getFirstName() == null) {
+            throw new InvalidRequestException("Required fields cannot be null");
+        }
+        String newEmail = updatedCustomer.getEmail();
+        String oldEmail = customerRepository.findById(id)
+                .orElseThrow(() -> new CustomerNotFoundException(id)).getEmail();
+        List<ReentrantLock> locks = emailLocks.lockAll(List.of(newEmail, oldEmail));
         try {
-            Customer existingCustomer = customerRepository.findById(id)
-                    .orElseThrow(() -> new CustomerNotFoundException(id));
-
-            // Null safety (optional, based on whether fields are required or validated elsewhere)
-            if (updatedCustomer.getEmail() == null || updatedCustomer.getFirstName() == null) {
-                throw new IllegalArgumentException("Required fields cannot be null");
+            boolean emailChanged = !oldEmail.equals(newEmail);
+            if (emailChanged && emailFilter.mightContain(newEmail)) {
+                Optional<Customer> holder = customerRepository.findByEmail(newEmail);
+                if (holder.isPresent() && !holder.get().getId().equals(id)) {
+                    throw new CustomerAlreadyExistsException(newEmail);
+                }
             }
-
-            // Remove old email from cache if changing
-            if (!existingCustomer.getEmail().equals(updatedCustomer.getEmail())) {
-                emailCache.remove(existingCustomer.getEmail());
+            String[] committedOldEmail = new String[1];
+            Customer savedCustomer;
+            try {
+                savedCustomer = transactionTemplate.execute(status -> {
+                    Customer existingCustomer = customerRepository.findById(id)
+                            .orElseThrow(() -> new CustomerNotFoundException(id));
+                    committedOldEmail[0] = existingCustomer.getEmail();
+                    existingCustomer.setFirstName(updatedCustomer.getFirstName());
+                    existingCustomer.setLastName(updatedCustomer.getLastName());
+                    existingCustomer.setEmail(newEmail);
+                    existingCustomer.setAddress(updatedCustomer.getAddress());
+                    return customerRepository.saveAndFlush(existingCustomer);
+                });
+            } catch (DataIntegrityViolationException e) {
+                throw duplicateOr(newEmail, id, e);
             }
-
-            existingCustomer.setFirstName(updatedCustomer.getFirstName());
-            existingCustomer.setLastName(updatedCustomer.getLastName());
-            existingCustomer.setEmail(updatedCustomer.getEmail());
-            existingCustomer.setAddress(updatedCustomer.getAddress());
-
-            Customer savedCustomer = customerRepository.save(existingCustomer);
-            emailCache.put(savedCustomer.getEmail(), savedCustomer);
-
+            // the row's email as of the commit; it may have changed since it was read outside the locks
+            if (!committedOldEmail[0].equals(newEmail)) {
+                emailFilter.add(newEmail);
+                emailFilter.remove(committedOldEmail[0]);
+                emailLookupCache.invalidate(committedOldEmail[0]);
+            }
+            emailLookupCache.invalidate(newEmail);
+            customerSearchIndex.onCustomerSaved(savedCustomer);
             return savedCustomer;
         } finally {
-            rwLock.writeLock().unlock();
+            emailLocks.unlockAll(locks);
         }
     }
 
-    @Transactional
+    /*
+     * Locks the stripe of the customer's email, like a write registering it,
+     * so the index, filter and cache updates of a concurrent update and of
+     * the delete cannot interleave: an update's post-commit re-index would
+     * otherwise put a deleted customer back into autocomplete. The email is
+     * read outside the lock; if the row no longer has it once the lock is
+     * held (or an update slipped in), the delete starts over.
+     */
     public boolean deleteCustomer(Long id) {
-        rwLock.writeLock().lock();
-        try {
-            Optional<Customer> customer = customerRepository.findById(id);
-            if (customer.isPresent()) {
-                emailCache.remove(customer.get().getEmail());
-                customerRepository.deleteById(id);
+        while (true) {
+            Optional<Customer> current = customerRepository.findById(id);
+            if (current.isEmpty()) {
+                return false;
+            }
+            String email = current.get().getEmail();
+            ReentrantLock lock = emailLocks.forEmail(email);
+            lock.lock();
+            try {
+                Customer[] found = new Customer[1];
+                Boolean deleted;
+                try {
+                    deleted = transactionTemplate.execute(status -> {
+                        found[0] = customerRepository.findById(id).orElse(null);
+                        if (found[0] == null || !found[0].getEmail().equals(email)) {
+                            return false;
+                        }
+                        customerRepository.delete(found[0]);
+                        return true;
+                    });
+                } catch (ObjectOptimisticLockingFailureException e) {
+                    continue; // updated between the read and the delete
+                }
+                if (found[0] == null) {
+                    return false;
+                }
+                if (!Boolean.TRUE.equals(deleted)) {
+                    continue; // email changed: lock its new stripe
+                }
+                emailFilter.remove(email);
+                emailLookupCache.invalidate(email);
+                customerSearchIndex.onCustomerDeleted(id);
                 return true;
+            } finally {
+                lock.unlock();
             }
-            return false;
-        } finally {
-            rwLock.writeLock().unlock();
-
         }
     }
+
+    public Map<String, Object> getEmailFilterStats() {
+        return emailFilter.stats();
+    }
     
-    public List<Customer> searchCustomers(String searchTerm) {
-        return customerRepository.findByFirstNameContainingOrLastNameContaining(searchTerm, searchTerm);
+    // Ranked ids from the in-memory CustomerSearchIndex, customers loaded with one IN query
+    public List<Customer> searchCustomers(String searchTerm, int limit) {
+        if (!customerSearchIndex.isReady()) {
+            throw new ServiceUnavailableException(
+                    "Customer search index is still loading, retry shortly", INDEX_RETRY_AFTER_SECONDS);
+        }
+        List<Long> ids = customerSearchIndex.search(searchTerm, limit).stream()
+                .map(CustomerSearchIndex.Hit::customerId)
+                .toList();
+        Map<Long, Customer> customers = new HashMap<>();
+        for (Customer customer : customerRepository.findAllById(ids)) {
+            customers.put(customer.getId(), customer);
+        }
+        // in rank order; a customer deleted since the search is skipped
+        return ids.stream().map(customers::get).filter(Objects::nonNull).toList();
+    }
+
+    public List<CustomerSuggestion> autocomplete(String prefix, int limit) {
+        if (!customerSearchIndex.isReady()) {
+            throw new ServiceUnavailableException(
+                    "Customer search index is still loading, retry shortly", INDEX_RETRY_AFTER_SECONDS);
+        }
+        return customerSearchIndex.autocomplete(prefix, limit);
+    }
+
+    public Map<String, Long> getSearchIndexStats() {
+        return customerSearchIndex.stats();
+    }
+
+    // Bulk loading streams through a pipeline with batched inserts, see CustomerImportService
+    public CustomerImportJob importCustomers(InputStream body, CustomerImportJob.Format format) throws IOException {
+        return customerImportService.importCustomers(body, format);
+    }
+
+    public Optional<CustomerImportJob> getImportJob(String jobId) {
+        return customerImportService.getJob(jobId);
+    }
 
+    public List<CustomerImportJob> getImportJobs() {
+        return customerImportService.getJobs();
     }
 
 }
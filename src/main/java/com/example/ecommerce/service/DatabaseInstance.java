@@ -0,0 +1,62 @@
+package com.example.ecommerce.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+/*
+ * Identity of the database the application runs against.
+ *
+ * Order ids are only unique within one database: an in-memory or recreated
+ * schema hands out the same ids again. Files kept next to the database (the
+ * order journal, the order archive) record this id and ignore what was
+ * written for another database instead of applying it to unrelated orders.
+ *
+ * The id is a random UUID stored in a one-row table on first use; it lives
+ * exactly as long as the data does.
+ */
+@Component
+public class DatabaseInstance {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile String id;
+
+    public String id() {
+        String current = id;
+        if (current == null) {
+            synchronized (this) {
+                current = id;
+                if (current == null) {
+                    current = load();
+                    id = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private String load() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS database_instance "
+                + "(singleton INT PRIMARY KEY, instance_id VARCHAR(36) NOT NULL)");
+        List<String> existing = jdbcTemplate.queryForList(
+                "SELECT instance_id FROM database_instance WHERE singleton = 1", String.class);
+        if (!existing.isEmpty()) {
+            return existing.get(0);
+        }
+        try {
+            String created = UUID.randomUUID().toString();
+            jdbcTemplate.update("INSERT INTO database_instance (singleton, instance_id) VALUES (1, ?)", created);
+            return created;
+        } catch (DuplicateKeyException e) {
+            // another application instance on the same database got there first
+            return jdbcTemplate.queryForObject(
+                    "SELECT instance_id FROM database_instance WHERE singleton = 1", String.class);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.ecommerce.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Recently deleted product ids, for the indexes fed by after-commit callbacks.
+ *
+ * The callbacks of two transactions on one product can run in the opposite
+ * order to their commits, so a save that committed before a delete may be
+ * reported after it. Product ids are never reused, so such a save must be
+ * dropped rather than put the product back. The race only spans the gap
+ * between two callbacks; ids are forgotten after RETENTION, which keeps the
+ * set bounded by the delete rate.
+ *
+ * Not thread-safe: used under the owning index's write lock.
+ */
+final class DeletedProducts {
+
+    private static final long RETENTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final LinkedHashMap<Long, Long> deletedAt = new LinkedHashMap<>(); // insertion = deletion order
+
+    void add(long productId) {
+        long now = System.nanoTime();
+        prune(now);
+        deletedAt.put(productId, now);
+    }
+
+    boolean contains(long productId) {
+        prune(System.nanoTime());
+        return deletedAt.containsKey(productId);
+    }
+
+    int size() {
+        return deletedAt.size();
+    }
+
+    private void prune(long now) {
+        Iterator<Map.Entry<Long, Long>> oldest = deletedAt.entrySet().iterator();
+        while (oldest.hasNext() && now - oldest.next().getValue() > RETENTION_NANOS) {
+            oldest.remove();
+        }
+    }
+}
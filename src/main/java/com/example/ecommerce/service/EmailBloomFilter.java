@@ -0,0 +1,181 @@
+package com.example.ecommerce.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counting Bloom filter over registered customer emails.
+ *
+ * mightContain() == false means the email is certainly not registered, so
+ * signup can go straight to the INSERT without a findByEmail query. A true
+ * answer is only a "maybe" (falsePositiveRate at expectedEmails entries) and
+ * has to be confirmed by the database. The unique constraint on email stays
+ * the arbiter: a stale filter costs a query or a failed insert, never a
+ * wrong answer.
+ *
+ * Counters are 4 bits, sixteen per long, updated with CAS - no lock on any
+ * path. Counting (instead of single bits) is what allows remove() on delete
+ * and email change. A counter that reached 15 sticks there, since it no longer
+ * knows how many emails share it.
+ *
+ * The filter is filled from the customers table on startup and then kept
+ * current by CustomerService after each commit. Removals are ignored until
+ * that load has finished: a row deleted before the scan reached it was never
+ * counted, and decrementing for it could zero a counter another email needs.
+ * Skipping a removal can only leave a false positive, so once loaded the
+ * filter has no false negatives and a "no" can answer a lookup by itself.
+ */
+@Component
+public class EmailBloomFilter {
+
+    private static final int MAX_COUNT = 15;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.customers.email-filter.expected-emails:1000000}")
+    private long expectedEmails;
+
+    @Value("${app.customers.email-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private AtomicLongArray counters;
+    private long counterCount;
+    private int hashes;
+
+    private final AtomicLong emails = new AtomicLong();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder positives = new LongAdder();
+    private volatile boolean loaded;
+
+    @PostConstruct
+    public void init() {
+        if (expectedEmails < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalStateException("app.customers.email-filter requires expected-emails >= 1 and "
+                    + "0 < false-positive-rate < 1");
+        }
+        // m = -n ln p / (ln 2)^2 counters, k = m/n ln 2 hash functions
+        double m = -expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long words = Math.max(1, ((long) Math.ceil(m) + 15) / 16);
+        counters = new AtomicLongArray(Math.toIntExact(words));
+        counterCount = words * 16;
+        hashes = Math.max(1, (int) Math.round(counterCount / (double) expectedEmails * Math.log(2)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        jdbcTemplate.query("SELECT email FROM customers", rs -> {
+            add(rs.getString(1));
+        });
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean mightContain(String email) {
+        long hash = hash(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            if (count(index(h1, h2, i)) == 0) {
+                negatives.increment();
+                return false;
+            }
+        }
+        positives.increment();
+        return true;
+    }
+
+    public void add(String email) {
+        if (email == null) {
+            return;
+        }
+        update(email, 1);
+        emails.incrementAndGet();
+    }
+
+    public void remove(String email) {
+        if (email == null || !loaded) {
+            return;
+        }
+        update(email, -1);
+        emails.decrementAndGet();
+    }
+
+    private void update(String email, int delta) {
+        long hash = hash(email);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long counter = index(h1, h2, i);
+            int word = (int) (counter >>> 4);
+            int shift = (int) (counter & 15) << 2;
+            while (true) {
+                long current = counters.get(word);
+                int count = (int) ((current >>> shift) & 0xfL);
+                if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                    break; // saturated, or removing what was never counted
+                }
+                if (counters.compareAndSet(word, current, current + ((long) delta << shift))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private int count(long counter) {
+        long word = counters.get((int) (counter >>> 4));
+        return (int) ((word >>> ((int) (counter & 15) << 2)) & 0xfL);
+    }
+
+    // Kirsch-Mitzenmacher: the k indexes are h1 + i * h2 over one 64-bit hash
+    private long index(int h1, int h2, int i) {
+        long combined = (h1 & 0xffffffffL) + (long) i * (h2 & 0xffffffffL);
+        return Long.remainderUnsigned(combined, counterCount);
+    }
+
+    // FNV-1a over the chars, finished with the murmur3 fmix64 avalanche
+    private static long hash(String email) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < email.length(); i++) {
+            h ^= email.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public Map<String, Object> stats() {
+        long n = Math.max(0, emails.get());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("loaded", loaded);
+        stats.put("emails", n);
+        stats.put("counters", counterCount);
+        stats.put("hashes", hashes);
+        stats.put("memoryBytes", counterCount / 2);
+        // (1 - e^(-kn/m))^k at the current fill
+        stats.put("expectedFalsePositiveRate",
+                Math.pow(1 - Math.exp(-hashes * (double) n / counterCount), hashes));
+        stats.put("negatives", negatives.sum());
+        stats.put("positives", positives.sum());
+        return stats;
+    }
+}
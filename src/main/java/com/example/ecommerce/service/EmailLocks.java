@@ -0,0 +1,66 @@
+package com.example.ecommerce.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Striped locks by customer email, shared by every writer that registers,
+ * changes or removes an email together with its filter, cache and search
+ * index entries: CustomerService for single customers, CustomerImportService
+ * for the chunks of an import.
+ *
+ * A writer needing several stripes takes them in stripe order (lockAll), so
+ * two writers with overlapping emails cannot deadlock.
+ */
+@Component
+public class EmailLocks {
+
+    private static final int STRIPES = 64; // power of two
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ReentrantLock forEmail(String email) {
+        return locks[stripe(email)];
+    }
+
+    // Locks the stripes of all emails, each once and in stripe order; release with unlockAll
+    public List<ReentrantLock> lockAll(Collection<String> emails) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String email : emails) {
+            stripes.add(stripe(email));
+        }
+        List<ReentrantLock> held = new ArrayList<>(stripes.size());
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                held.add(locks[stripe]);
+            }
+        } catch (RuntimeException | Error e) {
+            unlockAll(held);
+            throw e;
+        }
+        return held;
+    }
+
+    public void unlockAll(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+
+    private static int stripe(String email) {
+        int h = email.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
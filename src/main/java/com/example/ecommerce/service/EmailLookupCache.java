@@ -0,0 +1,197 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Customer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+ * Bounded cache for customer lookups by email, including misses.
+ *
+ * - found customers live ttlSeconds, misses (Optional.empty()) only
+ * negativeTtlSeconds, so a bot walking unknown emails is answered from
+ * memory without pinning them for long
+ * - single flight: the first miss installs an entry holding an in-flight
+ * future and runs the query; concurrent lookups of the same email wait on
+ * that future, so N concurrent misses cost one query
+ * - invalidate() removes the entry, in flight or not. A load finishes by
+ * completing its future, never by writing the map, so a query that read the
+ * row before a commit can hand its (then current) answer to the waiters that
+ * joined it but can never re-insert it after the invalidation. Lookups
+ * arriving after the invalidation start a fresh query.
+ *
+ * Bound: found and missing entries each have one TTL, so each kind is kept in
+ * its own insertion-order FIFO whose head is always the next to expire.
+ * Expired heads are dropped on insert; above maxEntries the head expiring
+ * soonest is evicted early. An invalidated entry stays queued until it
+ * reaches the head (removing it from the middle would be a linear scan), so
+ * the bound counts queued entries as well as mapped ones: under update-heavy
+ * load the dead ones push the live heads out early instead of letting the
+ * queues grow without limit.
+ */
+@Component
+public class EmailLookupCache {
+
+    @Value("${app.customers.email-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.customers.email-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${app.customers.email-cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    private static final class Entry {
+        final String email;
+        final CompletableFuture<Optional<Customer>> value = new CompletableFuture<>();
+        volatile long expiresAtNanos = Long.MAX_VALUE; // set once loaded
+
+        Entry(String email) {
+            this.email = email;
+        }
+
+        boolean expired(long now) {
+            return value.isDone() && now - expiresAtNanos >= 0;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> found = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Entry> missing = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger(); // found + missing, including invalidated entries
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public Optional<Customer> get(String email, Function<String, Optional<Customer>> loader) {
+        while (true) {
+            long now = System.nanoTime();
+            Entry entry = entries.get(email);
+            if (entry != null && entry.expired(now)) {
+                entries.remove(email, entry);
+                entry = null;
+            }
+            if (entry == null) {
+                Entry created = new Entry(email);
+                entry = entries.putIfAbsent(email, created);
+                if (entry == null) {
+                    return load(created, loader);
+                }
+                continue; // lost the race; re-check the winner's entry
+            }
+            if (!entry.value.isDone()) {
+                coalesced.increment();
+            }
+            Optional<Customer> value;
+            try {
+                value = entry.value.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            if (value.isPresent()) {
+                hits.increment();
+            } else {
+                negativeHits.increment();
+            }
+            return value;
+        }
+    }
+
+    private Optional<Customer> load(Entry entry, Function<String, Optional<Customer>> loader) {
+        loads.increment();
+        Optional<Customer> value;
+        try {
+            value = loader.apply(entry.email);
+        } catch (RuntimeException e) {
+            entries.remove(entry.email, entry); // nothing to cache, the next lookup retries
+            entry.value.completeExceptionally(e);
+            throw e;
+        }
+        long ttl = value.isPresent() ? ttlSeconds : negativeTtlSeconds;
+        entry.expiresAtNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl);
+        entry.value.complete(value);
+        (value.isPresent() ? found : missing).add(entry);
+        queued.incrementAndGet();
+        evict(System.nanoTime());
+        return value;
+    }
+
+    // Called after a commit that created, changed or deleted the customer owning this email
+    public void invalidate(String email) {
+        if (email != null && entries.remove(email) != null) {
+            invalidations.increment();
+        }
+    }
+
+    private void evict(long now) {
+        while (true) {
+            Entry foundHead = live(found);
+            Entry missingHead = live(missing);
+            ConcurrentLinkedQueue<Entry> queue;
+            Entry head;
+            if (foundHead == null && missingHead == null) {
+                return;
+            }
+            if (missingHead == null
+                    || (foundHead != null && foundHead.expiresAtNanos - missingHead.expiresAtNanos < 0)) {
+                queue = found;
+                head = foundHead;
+            } else {
+                queue = missing;
+                head = missingHead;
+            }
+            if (!head.expired(now) && entries.size() <= maxEntries && queued.get() <= maxEntries) {
+                return;
+            }
+            if (queue.remove(head)) {
+                queued.decrementAndGet();
+                if (entries.remove(head.email, head)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    // Drops queue heads whose entry was already invalidated or replaced
+    private Entry live(ConcurrentLinkedQueue<Entry> queue) {
+        while (true) {
+            Entry head = queue.peek();
+            if (head == null || entries.get(head.email) == head) {
+                return head;
+            }
+            if (queue.remove(head)) {
+                queued.decrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) entries.size());
+        stats.put("queued", (long) queued.get());
+        stats.put("maxEntries", (long) maxEntries);
+        stats.put("hits", hits.sum());
+        stats.put("negativeHits", negativeHits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.OrderSummary;
+import com.example.ecommerce.exception.AdmissionRejectedException;
+import com.example.ecommerce.exception.IdempotencyKeyMismatchException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+ * Dedupe table for Idempotency-Key on order creation.
+ *
+ * The first request with a key installs an in-flight future (putIfAbsent)
+ * and creates the order; every concurrent or later request with the same key
+ * finds the entry and waits on / returns that same future, so a retry costs a
+ * map lookup and never a second insert. No lock is taken: the map's
+ * putIfAbsent decides who executes.
+ *
+ * - a key is bound to a fingerprint of its request body; reusing it for a
+ * different order is rejected (422)
+ * - the entry is bound to the order's intake future, not to the first
+ * caller's wait: when that caller gives up (timeout) the order is still
+ * queued and may yet be written, so the key stays taken and a retry gets
+ * that order once its batch commits
+ * - definite failures are not remembered: when the order is not queued
+ * (admission, full queue) or its write fails (validation, unknown customer)
+ * the entry is removed so the client's retry executes again
+ * - entries live ttlSeconds. Keys are also kept in a FIFO of insertion order;
+ * since every entry has the same TTL, the head is always the next to expire.
+ * Expired heads are dropped on every insert and by a periodic sweep, and
+ * beyond maxKeys the oldest completed entries are evicted early. In-flight
+ * entries are never evicted.
+ */
+@Component
+public class IdempotencyStore {
+
+    public record Outcome(OrderSummary order, boolean replayed) {
+    }
+
+    // A queued order: result completes once it is written, await() is the first caller's bounded wait for it
+    public record Submission(CompletableFuture<OrderSummary> result, Supplier<OrderSummary> await) {
+    }
+
+    private static final class Entry {
+        final String key;
+        final String fingerprint;
+        final long expiresAtNanos;
+        final CompletableFuture<OrderSummary> result = new CompletableFuture<>();
+
+        Entry(String key, String fingerprint, long expiresAtNanos) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean expired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    @Value("${app.orders.idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${app.orders.idempotency.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${app.orders.idempotency.wait-timeout-seconds:35}")
+    private long waitTimeoutSeconds;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong joinedInFlight = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // submit queues the order, or throws when it could not be queued
+    public Outcome execute(String key, String fingerprint, Supplier<Submission> submit) {
+        while (true) {
+            long now = System.nanoTime();
+            Entry entry = new Entry(key, fingerprint, now + TimeUnit.SECONDS.toNanos(ttlSeconds));
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                insertionOrder.add(entry);
+                evict(now);
+                return new Outcome(run(entry, submit), false);
+            }
+            if (existing.expired(now)) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!existing.fingerprint.equals(fingerprint)) {
+                mismatches.incrementAndGet();
+                throw new IdempotencyKeyMismatchException(key);
+            }
+            if (!existing.result.isDone()) {
+                joinedInFlight.incrementAndGet();
+            }
+            OrderSummary order = await(existing);
+            if (order == null) {
+                continue; // the first attempt failed and released the key: execute ourselves
+            }
+            replays.incrementAndGet();
+            return new Outcome(order, true);
+        }
+    }
+
+    private OrderSummary run(Entry entry, Supplier<Submission> submit) {
+        executions.incrementAndGet();
+        Submission submission;
+        try {
+            submission = submit.get();
+        } catch (RuntimeException e) {
+            release(entry);
+            throw e;
+        }
+        submission.result().whenComplete((order, failure) -> {
+            if (failure == null) {
+                entry.result.complete(order);
+            } else {
+                release(entry);
+            }
+        });
+        return submission.await().get(); // a timeout here leaves the entry bound to the queued order
+    }
+
+    // not created: a retry must execute again
+    private void release(Entry entry) {
+        entries.remove(entry.key, entry);
+        entry.result.complete(null);
+    }
+
+    // The first request's order, or null if it failed
+    private OrderSummary await(Entry entry) {
+        try {
+            return entry.result.get(waitTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for idempotent request " + entry.key, e);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            throw new AdmissionRejectedException("A request with Idempotency-Key " + entry.key
+                    + " is still being processed, retry later", 1);
+        }
+    }
+
+    @Scheduled(fixedDelay = 10000)
+    public void sweep() {
+        evict(System.nanoTime());
+    }
+
+    private void evict(long now) {
+        while (true) {
+            Entry head = insertionOrder.peek();
+            if (head == null) {
+                return;
+            }
+            boolean live = entries.get(head.key) == head; // failed and replaced entries are already gone
+            if (live && !head.expired(now) && entries.size() <= maxKeys) {
+                return;
+            }
+            if (live && !head.result.isDone()) {
+                return; // in flight: never evicted, the bound is exceeded until it completes
+            }
+            if (insertionOrder.remove(head) && live && entries.remove(head.key, head)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("keys", (long) entries.size());
+        stats.put("maxKeys", (long) maxKeys);
+        stats.put("ttlSeconds", ttlSeconds);
+        stats.put("executions", executions.get());
+        stats.put("replays", replays.get());
+        stats.put("joinedInFlight", joinedInFlight.get());
+        stats.put("mismatches", mismatches.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+}
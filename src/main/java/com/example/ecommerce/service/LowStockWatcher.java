@@ -0,0 +1,255 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.StockAlertEvent;
+import com.example.ecommerce.entity.Product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Push-based low-stock tracking, replacing the full-table threshold scan.
+ *
+ * Every product whose stock is below maxTrackedStock sits in the bucket of
+ * its exact stock level (a histogram of sets: bucket 3 = all products with 3
+ * units left). "Products below threshold t" is the union of buckets 0..t-1,
+ * i.e. O(t + k) for k results, independent of the catalog size. Products at
+ * or above maxTrackedStock are not tracked at all, so the common case of a
+ * stock change on a well-stocked product costs one map lookup.
+ *
+ * Fed by:
+ * - the StockLedger (every reserve / release / set), when the ledger is enabled
+ * - ProductService after commit (pessimistic stock path, reserve-batch,
+ * create / update / delete) otherwise
+ *
+ * Crossings of the alert threshold are pushed to Server-Sent Event
+ * subscribers as LOW_STOCK / OUT_OF_STOCK / RESTOCKED events. Delivery runs
+ * on the stockAlertExecutor, never on the thread that moved the stock.
+ */
+@Component
+public class LowStockWatcher implements ProductChangeListener, StockChangeListener {
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("stockAlertExecutor")
+    private Executor stockAlertExecutor;
+
+    @Value("${app.low-stock.max-tracked-stock:100}")
+    private int maxTrackedStock;
+
+    @Value("${app.low-stock.alert-threshold:10}")
+    private int alertThreshold;
+
+    @Value("${app.low-stock.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    private Set<Long>[] buckets;
+    private final ConcurrentHashMap<Long, Integer> trackedStock = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean ready;
+
+    private final AtomicLong alertsPublished = new AtomicLong();
+
+    @PostConstruct
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void init() {
+        if (alertThreshold > maxTrackedStock) {
+            throw new IllegalStateException("app.low-stock.alert-threshold (" + alertThreshold
+                    + ") must not exceed app.low-stock.max-tracked-stock (" + maxTrackedStock + ")");
+        }
+        buckets = new Set[maxTrackedStock];
+        for (int i = 0; i < maxTrackedStock; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+        if (stockLedger.isEnabled()) {
+            stockLedger.addListener(this);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------------------
+
+    // True when lowStockIds can answer this threshold
+    public boolean canAnswer(int threshold) {
+        return ready && threshold <= maxTrackedStock;
+    }
+
+    // Ids with stock < threshold, lowest stock first
+    public long[] lowStockIds(int threshold) {
+        int size = 0;
+        for (int stock = 0; stock < threshold; stock++) {
+            size += buckets[stock].size();
+        }
+        long[] ids = new long[size];
+        int count = 0;
+        for (int stock = 0; stock < threshold; stock++) {
+            for (Long id : buckets[stock]) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2 + 1); // grew while we were reading
+                }
+                ids[count++] = id;
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        emitter.onCompletion(() -> subscribers.remove(emitter));
+        emitter.onTimeout(() -> subscribers.remove(emitter));
+        emitter.onError(e -> subscribers.remove(emitter));
+        subscribers.add(emitter);
+        return emitter;
+    }
+
+    // ---------------------------------------------------------------------
+    // Stock changes
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void onStockChanged(Long productId, int available) {
+        if (available >= maxTrackedStock && !trackedStock.containsKey(productId)) {
+            return; // well stocked before and after: the hot path ends here
+        }
+        track(productId, available);
+    }
+
+    @Override
+    public void onProductSaved(Product product) {
+        int stock = stockLedger.isEnabled()
+                ? stockLedger.peekAvailable(product.getId()).orElse(product.getStockQuantity())
+                : product.getStockQuantity();
+        track(product.getId(), stock);
+    }
+
+    @Override
+    public void onProductDeleted(Long productId) {
+        trackedStock.computeIfPresent(productId, (id, old) -> {
+            buckets[old].remove(id);
+            return null;
+        });
+    }
+
+    // Ledger-less writes that only know which rows they touched (reserve-batch)
+    public void refresh(Collection<Long> productIds) {
+        for (Long productId : productIds) {
+            Integer stock = jdbcTemplate.query("SELECT stock_quantity FROM products WHERE id = ?",
+                    rs -> rs.next() ? rs.getInt(1) : null, productId);
+            if (stock == null) {
+                onProductDeleted(productId);
+            } else {
+                track(productId, stock);
+            }
+        }
+    }
+
+    /*
+     * compute() serializes updates per product, so the bucket move and the
+     * crossing check see a consistent previous value. With the ledger the
+     * stock is re-read inside compute: two racing notifications may arrive
+     * out of order, but whichever runs last stores the latest value.
+     */
+    private void track(Long productId, int reported) {
+        trackedStock.compute(productId, (id, previous) -> {
+            int stock = stockLedger.isEnabled() ? stockLedger.peekAvailable(id).orElse(reported) : reported;
+            if (previous != null) {
+                if (previous == stock) {
+                    return previous;
+                }
+                buckets[previous].remove(id);
+            }
+            publishCrossing(id, previous, stock);
+            if (stock >= maxTrackedStock) {
+                return null;
+            }
+            buckets[Math.max(stock, 0)].add(id);
+            return Math.max(stock, 0);
+        });
+    }
+
+    private void publishCrossing(Long productId, Integer previous, int stock) {
+        if (!ready) {
+            return; // initial load, nothing crossed
+        }
+        boolean wasLow = previous != null && previous < alertThreshold;
+        boolean isLow = stock < alertThreshold;
+        StockAlertEvent.Type type;
+        if (stock <= 0 && (previous == null || previous > 0)) {
+            type = StockAlertEvent.Type.OUT_OF_STOCK;
+        } else if (isLow && !wasLow) {
+            type = StockAlertEvent.Type.LOW_STOCK;
+        } else if (!isLow && wasLow) {
+            type = StockAlertEvent.Type.RESTOCKED;
+        } else {
+            return;
+        }
+        StockAlertEvent event = new StockAlertEvent(type, productId, previous, stock, alertThreshold,
+                LocalDateTime.now());
+        alertsPublished.incrementAndGet();
+        if (!subscribers.isEmpty()) {
+            stockAlertExecutor.execute(() -> broadcast(event));
+        }
+    }
+
+    private void broadcast(StockAlertEvent event) {
+        for (SseEmitter emitter : subscribers) {
+            try {
+                emitter.send(SseEmitter.event().name(event.getType().name()).data(event));
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(emitter); // client went away
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Startup
+    // ---------------------------------------------------------------------
+
+    // One scan at startup; from then on the index is maintained by the events above
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        jdbcTemplate.query("SELECT id, stock_quantity FROM products WHERE stock_quantity < ?",
+                rs -> {
+                    long id = rs.getLong(1);
+                    int stock = rs.getInt(2);
+                    track(id, stock);
+                }, maxTrackedStock);
+        ready = true;
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("trackedProducts", (long) trackedStock.size());
+        stats.put("maxTrackedStock", (long) maxTrackedStock);
+        stats.put("alertThreshold", (long) alertThreshold);
+        stats.put("subscribers", (long) subscribers.size());
+        stats.put("alertsPublished", alertsPublished.get());
+        return stats;
+    }
+}
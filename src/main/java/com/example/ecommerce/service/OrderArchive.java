@@ -0,0 +1,732 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.OrderSummary;
+import com.example.ecommerce.entity.Order;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Cold tier for finished orders.
+ *
+ * The archiver moves DELIVERED and CANCELLED orders whose last update is
+ * older than minAgeHours out of the orders table into immutable archive files
+ * on local disk. The files are columnar and compressed:
+ *
+ * - rows are sorted by (customer_id, order_date, id)
+ * - each column (id, customer, order date, amount, status, version, created,
+ * updated) is stored separately as zigzag varints, deltas for the sorted or
+ * correlated ones (ids, customers, dates), then deflated. Sorted ids and
+ * dates a few microseconds apart shrink to a byte or two per row.
+ * - a header holds the row count, id and date ranges and a customer
+ * directory (customer id -> first row, row count), so a customer lookup
+ * decodes one file and reads a contiguous run of rows
+ * - a trailing CRC32 covers the whole file
+ *
+ * Only the headers stay in memory; decoded files are kept in a small LRU
+ * (cacheFiles). Files are written to a temp name, forced and atomically
+ * renamed, and only then are the rows deleted (DELETE ... WHERE id = ? AND
+ * version = ?). A row changed in between stays in the hot table; readers
+ * merge both tiers and the hot copy wins, which also covers a crash between
+ * writing a file and deleting its rows.
+ *
+ * Archived order ids are only meaningful for the database they came from: an
+ * in-memory or recreated schema hands out the same ids again. Files therefore
+ * live in a subdirectory named after the DatabaseInstance id, and files of
+ * any other database are never read. Disabled by default; enable it with a
+ * persistent datasource.
+ *
+ * Files are immutable, so deleting an archived order appends its id to a
+ * tombstone file (deleted.ids, forced before delete() returns); lookups skip
+ * tombstoned ids.
+ */
+@Component
+public class OrderArchive {
+
+    private static final int MAGIC = 0x4F415243; // "OARC"
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_PREFIX = "orders-";
+    private static final String FILE_SUFFIX = ".arc";
+    private static final String TOMBSTONE_FILE = "deleted.ids";
+    private static final int COLUMNS = 8;
+    private static final Order.OrderStatus[] STATUSES = Order.OrderStatus.values();
+
+    private static final String CANDIDATES_SQL = "SELECT id, customer_id, order_date, total_amount, status, version, "
+            + "created_at, updated_at FROM orders WHERE status IN ('DELIVERED', 'CANCELLED') AND updated_at < ? "
+            + "ORDER BY id LIMIT ?";
+    private static final String DELETE_SQL = "DELETE FROM orders WHERE id = ? AND version = ?";
+
+    // newest first, then highest id: the order of "my orders"
+    private static final Comparator<OrderSummary> NEWEST_FIRST = Comparator
+            .comparing(OrderSummary::getOrderDate).thenComparing(OrderSummary::getId).reversed();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DatabaseInstance databaseInstance;
+
+    @Value("${app.orders.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.orders.archive.dir:data/order-archive}")
+    private String directory;
+
+    @Value("${app.orders.archive.min-age-hours:720}")
+    private long minAgeHours;
+
+    @Value("${app.orders.archive.max-orders-per-file:100000}")
+    private int maxOrdersPerFile;
+
+    @Value("${app.orders.archive.cache-files:4}")
+    private int cacheFiles;
+
+    private Path dir;
+    private final List<ArchiveFile> files = new CopyOnWriteArrayList<>(); // ascending sequence
+    private final ReentrantLock archiveLock = new ReentrantLock(); // one archiver run at a time
+    private Map<Path, Columns> decoded; // LRU, guarded by itself
+    private final Set<Long> tombstones = ConcurrentHashMap.newKeySet();
+    private final Object tombstoneLock = new Object(); // one append to deleted.ids at a time
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong archivedOrders = new AtomicLong();
+    private final AtomicLong keptHot = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong deletedOrders = new AtomicLong();
+
+    // Header of one file; all that is kept in memory per file
+    private record ArchiveFile(Path path, long sequence, int rows, long minId, long maxId,
+            long minDateMicros, long maxDateMicros, Map<Long, int[]> customers, long bytes, long rawBytes) {
+    }
+
+    private record Row(long id, long customerId, long orderDateMicros, long amountCents, int status, long version,
+            long createdMicros, long updatedMicros) {
+    }
+
+    // A decoded file: one array per column, rows in (customer, order date, id) order
+    private static final class Columns {
+        long[] id;
+        long[] customerId;
+        long[] orderDate;
+        long[] amount;
+        byte[] status;
+        long[] version;
+        long[] createdAt;
+        long[] updatedAt;
+        int[] rowsById; // row numbers sorted by id, for findById
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dir = Paths.get(directory).resolve(databaseInstance.id());
+        Files.createDirectories(dir);
+        readTombstones();
+        int capacity = Math.max(1, cacheFiles);
+        decoded = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Columns> eldest) {
+                return size() > capacity;
+            }
+        };
+        try (Stream<Path> paths = Files.list(dir)) {
+            List<Path> archives = paths
+                    .filter(p -> p.getFileName().toString().startsWith(FILE_PREFIX)
+                            && p.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted()
+                    .toList();
+            for (Path path : archives) {
+                try {
+                    files.add(readHeader(path, Files.readAllBytes(path)));
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Skipping unreadable order archive " + path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readTombstones() throws IOException {
+        Path file = dir.resolve(TOMBSTONE_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (!line.isEmpty()) {
+                try {
+                    tombstones.add(Long.parseLong(line));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping torn order archive tombstone '" + line + "'");
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Archiver
+    // ---------------------------------------------------------------------
+
+    @Scheduled(fixedDelayString = "${app.orders.archive.interval-ms:3600000}",
+            initialDelayString = "${app.orders.archive.interval-ms:3600000}")
+    public void scheduledRun() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    // Archives eligible orders, one file per maxOrdersPerFile, until none are left
+    public Map<String, Object> archive() {
+        if (!enabled) {
+            throw new IllegalStateException("Order archive is disabled");
+        }
+        archiveLock.lock();
+        try {
+            runs.incrementAndGet();
+            Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusHours(minAgeHours));
+            int filesWritten = 0;
+            long archived = 0;
+            long kept = 0;
+            while (true) {
+                List<Row> rows = jdbcTemplate.query(CANDIDATES_SQL, (rs, rowNum) -> {
+                    LocalDateTime orderDate = rs.getTimestamp("order_date").toLocalDateTime();
+                    Timestamp createdAt = rs.getTimestamp("created_at");
+                    Timestamp updatedAt = rs.getTimestamp("updated_at");
+                    Long version = rs.getObject("version", Long.class);
+                    return new Row(rs.getLong("id"), rs.getLong("customer_id"), toMicros(orderDate),
+                            rs.getBigDecimal("total_amount").setScale(2, RoundingMode.HALF_UP).unscaledValue()
+                                    .longValueExact(),
+                            Order.OrderStatus.valueOf(rs.getString("status")).ordinal(),
+                            version == null ? -1 : version,
+                            toMicros(createdAt == null ? orderDate : createdAt.toLocalDateTime()),
+                            toMicros(updatedAt == null ? orderDate : updatedAt.toLocalDateTime()));
+                }, cutoff, maxOrdersPerFile);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                long sequence = files.isEmpty() ? 1 : files.get(files.size() - 1).sequence() + 1;
+                files.add(writeFile(rows, sequence));
+                filesWritten++;
+
+                List<Object[]> keys = new ArrayList<>(rows.size());
+                for (Row row : rows) {
+                    keys.add(new Object[] { row.id(), row.version() });
+                }
+                int[] deleted = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(DELETE_SQL, keys));
+                long removed = 0;
+                for (int count : deleted) {
+                    removed += count;
+                }
+                archived += removed;
+                kept += rows.size() - removed; // changed since it was read: the hot copy stays authoritative
+                if (removed == 0) {
+                    break; // every candidate moved under us, do not spin on them
+                }
+            }
+            archivedOrders.addAndGet(archived);
+            keptHot.addAndGet(kept);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("filesWritten", filesWritten);
+            result.put("archived", archived);
+            result.put("keptHot", kept);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Order archive run failed", e);
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    private ArchiveFile writeFile(List<Row> rows, long sequence) throws IOException {
+        List<Row> sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparingLong(Row::customerId).thenComparingLong(Row::orderDateMicros)
+                .thenComparingLong(Row::id));
+
+        ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            columns[c] = new ByteArrayOutputStream();
+        }
+        Map<Long, int[]> customers = new LinkedHashMap<>();
+        long minId = Long.MAX_VALUE, maxId = Long.MIN_VALUE;
+        long minDate = Long.MAX_VALUE, maxDate = Long.MIN_VALUE;
+        long previousId = 0, previousCustomer = 0, previousDate = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Row row = sorted.get(i);
+            writeVarLong(columns[0], row.id() - previousId);
+            writeVarLong(columns[1], row.customerId() - previousCustomer);
+            writeVarLong(columns[2], row.orderDateMicros() - previousDate);
+            writeVarLong(columns[3], row.amountCents());
+            columns[4].write(row.status());
+            writeVarLong(columns[5], row.version());
+            writeVarLong(columns[6], row.createdMicros() - row.orderDateMicros());
+            writeVarLong(columns[7], row.updatedMicros() - row.orderDateMicros());
+            previousId = row.id();
+            previousCustomer = row.customerId();
+            previousDate = row.orderDateMicros();
+
+            int[] range = customers.computeIfAbsent(row.customerId(), id -> new int[] { -1, 0 });
+            if (range[0] < 0) {
+                range[0] = i;
+            }
+            range[1]++;
+            minId = Math.min(minId, row.id());
+            maxId = Math.max(maxId, row.id());
+            minDate = Math.min(minDate, row.orderDateMicros());
+            maxDate = Math.max(maxDate, row.orderDateMicros());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(sorted.size());
+        out.writeLong(minId);
+        out.writeLong(maxId);
+        out.writeLong(minDate);
+        out.writeLong(maxDate);
+        out.writeInt(customers.size());
+        for (Map.Entry<Long, int[]> entry : customers.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue()[0]);
+            out.writeInt(entry.getValue()[1]);
+        }
+        Deflater deflater = new Deflater();
+        try {
+            for (ByteArrayOutputStream column : columns) {
+                byte[] raw = column.toByteArray();
+                byte[] compressed = deflate(deflater, raw);
+                out.writeInt(raw.length);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        byte[] content = bytes.toByteArray();
+
+        Path target = dir.resolve(String.format("%s%012d%s", FILE_PREFIX, sequence, FILE_SUFFIX));
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true); // on disk before the rows are deleted
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        return readHeader(target, content);
+    }
+
+    // ---------------------------------------------------------------------
+    // Deletes
+    // ---------------------------------------------------------------------
+
+    /*
+     * Tombstones an archived order; false when it is not archived (or already
+     * deleted). The tombstone is on disk before this returns.
+     */
+    public boolean delete(Long id) {
+        synchronized (tombstoneLock) {
+            if (findById(id).isEmpty()) {
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(dir.resolve(TOMBSTONE_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap((id + "\n").getBytes(StandardCharsets.US_ASCII));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot delete archived order " + id, e);
+            }
+            tombstones.add(id);
+            deletedOrders.incrementAndGet();
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Lookups
+    // ---------------------------------------------------------------------
+
+    public boolean hasCustomer(Long customerId) {
+        for (ArchiveFile file : files) {
+            if (file.customers().containsKey(customerId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Optional<OrderSummary> findById(Long id) {
+        if (tombstones.contains(id)) {
+            return Optional.empty();
+        }
+        for (int f = files.size() - 1; f >= 0; f--) { // newest file first
+            ArchiveFile file = files.get(f);
+            if (id < file.minId() || id > file.maxId()) {
+                continue;
+            }
+            Columns columns = columns(file);
+            int low = 0, high = columns.rowsById.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long candidate = columns.id[columns.rowsById[mid]];
+                if (candidate < id) {
+                    low = mid + 1;
+                } else if (candidate > id) {
+                    high = mid - 1;
+                } else {
+                    return Optional.of(toSummary(columns, columns.rowsById[mid]));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * A customer's archived orders, newest first, strictly before the
+     * (orderDate, id) keyset position when one is given.
+     */
+    public List<OrderSummary> findByCustomer(Long customerId, LocalDateTime beforeDate, Long beforeId, int limit) {
+        Map<Long, OrderSummary> byId = new HashMap<>();
+        for (int f = files.size() - 1; f >= 0; f--) {
+            ArchiveFile file = files.get(f);
+            int[] range = file.customers().get(customerId);
+            if (range == null) {
+                continue;
+            }
+            Columns columns = columns(file);
+            int end = range[0] + range[1]; // rows [range[0], end) ascending by (orderDate, id)
+            if (beforeDate != null) {
+                long date = toMicros(beforeDate);
+                while (end > range[0] && (columns.orderDate[end - 1] > date
+                        || (columns.orderDate[end - 1] == date && columns.id[end - 1] >= beforeId))) {
+                    end--;
+                }
+            }
+            for (int row = end - 1, taken = 0; row >= range[0] && taken < limit; row--) {
+                if (!tombstones.contains(columns.id[row])) {
+                    byId.putIfAbsent(columns.id[row], toSummary(columns, row)); // newer file wins
+                    taken++;
+                }
+            }
+        }
+        List<OrderSummary> orders = new ArrayList<>(byId.values());
+        orders.sort(NEWEST_FIRST);
+        return orders.size() > limit ? new ArrayList<>(orders.subList(0, limit)) : orders;
+    }
+
+    /*
+     * Archived orders with from <= orderDate < to (either bound optional),
+     * optionally of one customer, oldest first.
+     */
+    public List<OrderSummary> findByDateRange(Long customerId, LocalDateTime from, LocalDateTime to, int limit) {
+        long fromMicros = from == null ? Long.MIN_VALUE : toMicros(from);
+        long toMicros = to == null ? Long.MAX_VALUE : toMicros(to);
+        Map<Long, OrderSummary> byId = new HashMap<>();
+        for (int f = files.size() - 1; f >= 0; f--) {
+            ArchiveFile file = files.get(f);
+            if (file.maxDateMicros() < fromMicros || file.minDateMicros() >= toMicros) {
+                continue;
+            }
+            int first = 0;
+            int end = file.rows();
+            if (customerId != null) {
+                int[] range = file.customers().get(customerId);
+                if (range == null) {
+                    continue;
+                }
+                first = range[0];
+                end = range[0] + range[1];
+            }
+            Columns columns = columns(file);
+            for (int row = first; row < end; row++) {
+                long date = columns.orderDate[row];
+                if (date >= fromMicros && date < toMicros && !tombstones.contains(columns.id[row])) {
+                    byId.putIfAbsent(columns.id[row], toSummary(columns, row));
+                }
+            }
+        }
+        List<OrderSummary> orders = new ArrayList<>(byId.values());
+        orders.sort(NEWEST_FIRST.reversed());
+        return orders.size() > limit ? new ArrayList<>(orders.subList(0, limit)) : orders;
+    }
+
+    private static OrderSummary toSummary(Columns columns, int row) {
+        long orderDate = columns.orderDate[row];
+        long version = columns.version[row];
+        return new OrderSummary(columns.id[row], columns.customerId[row], fromMicros(orderDate),
+                BigDecimal.valueOf(columns.amount[row], 2), STATUSES[columns.status[row]],
+                null, // priority only steers processing, finished orders do not keep it
+                version < 0 ? null : version, fromMicros(orderDate + columns.createdAt[row]),
+                fromMicros(orderDate + columns.updatedAt[row]));
+    }
+
+    // ---------------------------------------------------------------------
+    // Decoding
+    // ---------------------------------------------------------------------
+
+    private Columns columns(ArchiveFile file) {
+        synchronized (decoded) {
+            Columns cached = decoded.get(file.path());
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+        Columns columns;
+        try {
+            columns = decode(file, Files.readAllBytes(file.path()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read order archive " + file.path(), e);
+        }
+        decodes.incrementAndGet();
+        synchronized (decoded) {
+            decoded.put(file.path(), columns);
+        }
+        return columns;
+    }
+
+    private static ArchiveFile readHeader(Path path, byte[] content) {
+        ByteBuffer buffer = verified(path, content);
+        int rows = buffer.getInt();
+        long minId = buffer.getLong();
+        long maxId = buffer.getLong();
+        long minDate = buffer.getLong();
+        long maxDate = buffer.getLong();
+        int customerCount = buffer.getInt();
+        Map<Long, int[]> customers = new HashMap<>(customerCount * 2);
+        for (int i = 0; i < customerCount; i++) {
+            customers.put(buffer.getLong(), new int[] { buffer.getInt(), buffer.getInt() });
+        }
+        long rawBytes = 0;
+        for (int c = 0; c < COLUMNS; c++) {
+            rawBytes += buffer.getInt();
+            int compressed = buffer.getInt();
+            buffer.position(buffer.position() + compressed);
+        }
+        String name = path.getFileName().toString();
+        long sequence = Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        return new ArchiveFile(path, sequence, rows, minId, maxId, minDate, maxDate, customers, content.length,
+                rawBytes);
+    }
+
+    private static Columns decode(ArchiveFile file, byte[] content) {
+        ByteBuffer buffer = verified(file.path(), content);
+        int rows = buffer.getInt();
+        buffer.position(buffer.position() + 4 * Long.BYTES); // id and date ranges
+        int customerCount = buffer.getInt();
+        buffer.position(buffer.position() + customerCount * (Long.BYTES + 2 * Integer.BYTES));
+
+        byte[][] raw = new byte[COLUMNS][];
+        Inflater inflater = new Inflater();
+        try {
+            for (int c = 0; c < COLUMNS; c++) {
+                raw[c] = new byte[buffer.getInt()];
+                int compressed = buffer.getInt();
+                inflater.reset();
+                inflater.setInput(content, buffer.position(), compressed);
+                int filled = 0;
+                while (filled < raw[c].length) {
+                    int n = inflater.inflate(raw[c], filled, raw[c].length - filled);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Truncated column " + c + " in " + file.path());
+                    }
+                    filled += n;
+                }
+                buffer.position(buffer.position() + compressed);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt order archive " + file.path(), e);
+        } finally {
+            inflater.end();
+        }
+
+        Columns columns = new Columns();
+        columns.id = new long[rows];
+        columns.customerId = new long[rows];
+        columns.orderDate = new long[rows];
+        columns.amount = new long[rows];
+        columns.status = raw[4];
+        columns.version = new long[rows];
+        columns.createdAt = new long[rows];
+        columns.updatedAt = new long[rows];
+        int[] positions = new int[COLUMNS];
+        long id = 0, customer = 0, date = 0;
+        for (int row = 0; row < rows; row++) {
+            id += readVarLong(raw[0], positions, 0);
+            customer += readVarLong(raw[1], positions, 1);
+            date += readVarLong(raw[2], positions, 2);
+            columns.id[row] = id;
+            columns.customerId[row] = customer;
+            columns.orderDate[row] = date;
+            columns.amount[row] = readVarLong(raw[3], positions, 3);
+            columns.version[row] = readVarLong(raw[5], positions, 5);
+            columns.createdAt[row] = readVarLong(raw[6], positions, 6); // relative to orderDate
+            columns.updatedAt[row] = readVarLong(raw[7], positions, 7);
+        }
+        columns.rowsById = sortedById(columns.id);
+        return columns;
+    }
+
+    // row numbers ordered by id (ids are unique within a file)
+    private static int[] sortedById(long[] ids) {
+        return IntStream.range(0, ids.length).boxed()
+                .sorted(Comparator.comparingLong(row -> ids[row]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private static ByteBuffer verified(Path path, byte[] content) {
+        if (content.length < 3 * Integer.BYTES + Long.BYTES) {
+            throw new IllegalStateException("Truncated order archive " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Long.BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (buffer.getLong(content.length - Long.BYTES) != crc.getValue()) {
+            throw new IllegalStateException("Checksum mismatch in order archive " + path);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IllegalStateException("Not an order archive (or unsupported version): " + path);
+        }
+        return buffer;
+    }
+
+    // ---------------------------------------------------------------------
+    // Encoding helpers
+    // ---------------------------------------------------------------------
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    // zigzag varint: small magnitudes of either sign take one or two bytes
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    private static long readVarLong(byte[] in, int[] positions, int column) {
+        long zigzag = 0;
+        int shift = 0;
+        int position = positions[column];
+        while (true) {
+            byte b = in[position++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        positions[column] = position;
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    public Map<String, Object> stats() {
+        long rows = 0, bytes = 0, rawBytes = 0;
+        for (ArchiveFile file : files) {
+            rows += file.rows();
+            bytes += file.bytes();
+            rawBytes += file.rawBytes();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (enabled) {
+            stats.put("directory", dir.toAbsolutePath().toString());
+        }
+        stats.put("files", files.size());
+        stats.put("archivedRows", rows);
+        stats.put("bytesOnDisk", bytes);
+        stats.put("bytesPerOrder", rows == 0 ? 0.0 : (double) bytes / rows);
+        stats.put("encodedBytesBeforeDeflate", rawBytes);
+        stats.put("runs", runs.get());
+        stats.put("archivedOrders", archivedOrders.get());
+        stats.put("keptHot", keptHot.get());
+        stats.put("decodes", decodes.get());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("deletedOrders", deletedOrders.get());
+        stats.put("tombstones", tombstones.size());
+        return stats;
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.dto.OrderStatusEvent;
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.exception.OrderNotFoundException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Pushes order status changes to Server-Sent Event subscribers, so clients
+ * stop polling GET /api/orders/{id}.
+ *
+ * A subscriber watches one order, one customer's orders, or everything.
+ * Routing is a map lookup per filter; the committing thread only appends the
+ * event to each matching subscriber's buffer and never writes to a socket.
+ *
+ * Every subscriber has a bounded buffer keyed by order id. While a delivery
+ * is in progress (slow client), further changes of the same order are
+ * coalesced into the pending event: the subscriber gets the latest status,
+ * with previousStatus still the one it last saw. When the buffer holds
+ * bufferSize distinct orders, the oldest pending event is dropped. Delivery
+ * runs on the orderEventExecutor, at most one task per subscriber.
+ *
+ * Fulfilment transitions only know the order id; the customer is looked up
+ * only while someone subscribes by customer, or to an order with a customer
+ * filter. The lookup runs on the publishing thread before routing: events of
+ * one order are published in commit order, and routing them in that same
+ * order is what lets coalescing keep the newest status.
+ */
+@Component
+public class OrderEventBroadcaster implements OrderStatusListener {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("orderEventExecutor")
+    private Executor orderEventExecutor;
+
+    @Value("${app.orders.events.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${app.orders.events.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    private final Set<Subscriber> allOrders = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Set<Subscriber>> byOrder = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<Subscriber>> byCustomer = new ConcurrentHashMap<>();
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong customerLookups = new AtomicLong();
+
+    // ---------------------------------------------------------------------
+    // Subscriptions
+    // ---------------------------------------------------------------------
+
+    /*
+     * Both filters null = every order. A subscription to one order first
+     * receives its current status as a snapshot event (previousStatus null);
+     * with a customer filter as well, neither the snapshot nor later events
+     * are sent unless the order belongs to that customer.
+     */
+    public SseEmitter subscribe(Long customerId, Long orderId) {
+        OrderStatusEvent snapshot = null;
+        if (orderId != null) {
+            snapshot = jdbcTemplate.query("SELECT customer_id, status FROM orders WHERE id = ?",
+                    rs -> rs.next()
+                            ? new OrderStatusEvent(orderId, rs.getLong(1), null,
+                                    Order.OrderStatus.valueOf(rs.getString(2)), 0, LocalDateTime.now())
+                            : null,
+                    orderId);
+            if (snapshot == null) {
+                throw new OrderNotFoundException(orderId);
+            }
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, customerId, orderId);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        if (orderId != null) {
+            byOrder.computeIfAbsent(orderId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        } else if (customerId != null) {
+            byCustomer.computeIfAbsent(customerId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        } else {
+            allOrders.add(subscriber);
+        }
+        if (snapshot != null && (customerId == null || customerId.equals(snapshot.getCustomerId()))) {
+            subscriber.offer(snapshot);
+        }
+        return emitter;
+    }
+
+    private void unregister(Subscriber subscriber) {
+        allOrders.remove(subscriber);
+        if (subscriber.orderId != null) {
+            removeFrom(byOrder, subscriber.orderId, subscriber);
+        } else if (subscriber.customerId != null) {
+            removeFrom(byCustomer, subscriber.customerId, subscriber);
+        }
+    }
+
+    private static void removeFrom(ConcurrentHashMap<Long, Set<Subscriber>> index, Long key, Subscriber subscriber) {
+        index.computeIfPresent(key, (k, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    // ---------------------------------------------------------------------
+    // Publishing
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void onOrderStatusChanged(Long orderId, Long customerId, Order.OrderStatus previous,
+            Order.OrderStatus status) {
+        if (allOrders.isEmpty() && byOrder.isEmpty() && byCustomer.isEmpty()) {
+            return; // nobody listening: the common case costs three size checks
+        }
+        published.incrementAndGet();
+        Set<Subscriber> orderSubscribers = byOrder.get(orderId);
+        if (customerId == null && (!byCustomer.isEmpty() || orderSubscribers != null)) {
+            customerId = lookupCustomer(orderId);
+        }
+        route(new OrderStatusEvent(orderId, customerId, previous, status, 0, LocalDateTime.now()), orderSubscribers);
+    }
+
+    // null when the order is gone or the lookup failed: customer-filtered subscribers miss this one
+    private Long lookupCustomer(Long orderId) {
+        customerLookups.incrementAndGet();
+        try {
+            return jdbcTemplate.query("SELECT customer_id FROM orders WHERE id = ?",
+                    rs -> rs.next() ? rs.getLong(1) : null, orderId);
+        } catch (DataAccessException e) {
+            System.err.println("Order event customer lookup failed for order " + orderId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void route(OrderStatusEvent event, Set<Subscriber> orderSubscribers) {
+        for (Subscriber subscriber : allOrders) {
+            subscriber.offer(event);
+        }
+        if (orderSubscribers != null) {
+            for (Subscriber subscriber : orderSubscribers) {
+                if (subscriber.customerId == null || subscriber.customerId.equals(event.getCustomerId())) {
+                    subscriber.offer(event);
+                }
+            }
+        }
+        Set<Subscriber> customerSubscribers = event.getCustomerId() == null ? null
+                : byCustomer.get(event.getCustomerId());
+        if (customerSubscribers != null) {
+            for (Subscriber subscriber : customerSubscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Per-subscriber buffer
+    // ---------------------------------------------------------------------
+
+    private final class Subscriber {
+        final SseEmitter emitter;
+        final Long customerId;
+        final Long orderId;
+        // pending events in arrival order, one per order id; guarded by this
+        private final LinkedHashMap<Long, OrderStatusEvent> pending = new LinkedHashMap<>();
+        private boolean draining; // guarded by this
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, Long customerId, Long orderId) {
+            this.emitter = emitter;
+            this.customerId = customerId;
+            this.orderId = orderId;
+        }
+
+        void offer(OrderStatusEvent event) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                OrderStatusEvent queued = pending.get(event.getOrderId());
+                if (queued != null) {
+                    // the subscriber has not seen the queued status yet: skip straight to the new one
+                    queued.setStatus(event.getStatus());
+                    queued.setTimestamp(event.getTimestamp());
+                    queued.setCoalesced(queued.getCoalesced() + 1);
+                    coalesced.incrementAndGet();
+                } else {
+                    if (pending.size() >= bufferSize) {
+                        Iterator<OrderStatusEvent> oldest = pending.values().iterator();
+                        oldest.next();
+                        oldest.remove();
+                        dropped.incrementAndGet();
+                    }
+                    // a copy per subscriber: coalescing mutates it
+                    pending.put(event.getOrderId(), new OrderStatusEvent(event.getOrderId(), event.getCustomerId(),
+                            event.getPreviousStatus(), event.getStatus(), 0, event.getTimestamp()));
+                }
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                orderEventExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    draining = false; // retried by the next offer
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<OrderStatusEvent> batch;
+                synchronized (this) {
+                    if (closed || pending.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    batch = new ArrayList<>(pending.values());
+                    pending.clear();
+                }
+                for (OrderStatusEvent event : batch) {
+                    try {
+                        emitter.send(SseEmitter.event().name(event.getStatus().name()).data(event));
+                        delivered.incrementAndGet();
+                    } catch (IOException | IllegalStateException e) {
+                        close(); // client went away
+                        emitter.completeWithError(e);
+                        return;
+                    }
+                }
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+            }
+            unregister(this);
+        }
+    }
+
+    public Map<String, Long> stats() {
+        long subscribers = allOrders.size()
+                + byOrder.values().stream().mapToLong(Set::size).sum()
+                + byCustomer.values().stream().mapToLong(Set::size).sum();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers);
+        stats.put("published", published.get());
+        stats.put("delivered", delivered.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("dropped", dropped.get());
+        stats.put("customerLookups", customerLookups.get());
+        return stats;
+    }
+}
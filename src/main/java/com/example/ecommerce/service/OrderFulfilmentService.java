@@ -0,0 +1,257 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Order;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Order fulfilment as an event-driven state machine.
+ *
+ * The old processor parked one of three threads in Thread.sleep for the whole
+ * 5 seconds of every order, so at most three orders were ever in fulfilment.
+ * Here an order in fulfilment is nothing but a pending entry in a delay queue
+ * (ScheduledThreadPoolExecutor): when its delay expires, a short task applies
+ * one transition and schedules the next one. No thread waits on an order, so
+ * a couple of threads can carry hundreds of thousands of orders in flight.
+ *
+ * Transitions are configured as "FROM->TO:delayMs" rules, one per source
+ * status (app.orders.fulfilment.transitions). A transition is a conditional
+ * UPDATE ... WHERE status = FROM: if the order was cancelled, deleted or moved
+ * by hand in the meantime the update matches nothing and that chain simply
+ * ends. A manual status change starts a new chain from the new status.
+ *
+ * With the journal enabled (persistent datasources only) pending transitions
+ * are journaled (OrderJournal) so they survive a restart; otherwise they are
+ * rebuilt from the orders' current status on startup.
+ *
+ * The delay queue only keeps time: a due transition is handed to the order's
+ * lane in OrderPriorityLanes and applied by that lane's workers, so express
+ * orders move on ahead of a backlog of standard ones.
+ */
+@Service
+public class OrderFulfilmentService {
+
+    private static final String TRANSITION_SQL = "UPDATE orders SET status = ?, version = version + 1, updated_at = ? WHERE id = ? AND status = ?";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long NOT_JOURNALED = -1;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderJournal orderJournal;
+
+    @Autowired
+    private List<OrderStatusListener> orderStatusListeners;
+
+    @Autowired
+    private OrderPriorityLanes orderPriorityLanes;
+
+    @Value("${app.orders.fulfilment.transitions:PENDING->PROCESSING:2000,PROCESSING->SHIPPED:3000}")
+    private String transitionRules;
+
+    @Value("${app.orders.fulfilment.threads:2}")
+    private int threads;
+
+    private final Map<Order.OrderStatus, Transition> transitions = new EnumMap<>(Order.OrderStatus.class);
+    private ScheduledThreadPoolExecutor scheduler;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong transitionsApplied = new AtomicLong();
+    private final AtomicLong transitionsSkipped = new AtomicLong();
+    private final AtomicLong transitionsFailed = new AtomicLong();
+
+    private record Transition(Order.OrderStatus to, long delayMs) {
+    }
+
+    @PostConstruct
+    public void init() {
+        for (String rule : transitionRules.split(",")) {
+            // FROM->TO:delayMs
+            String[] fromAndRest = rule.trim().split("->");
+            String[] toAndDelay = fromAndRest.length == 2 ? fromAndRest[1].split(":") : new String[0];
+            if (toAndDelay.length != 2) {
+                throw new IllegalStateException("Invalid fulfilment transition '" + rule + "', expected FROM->TO:delayMs");
+            }
+            Order.OrderStatus from = Order.OrderStatus.valueOf(fromAndRest[0].trim());
+            Order.OrderStatus to = Order.OrderStatus.valueOf(toAndDelay[0].trim());
+            transitions.put(from, new Transition(to, Long.parseLong(toAndDelay[1].trim())));
+        }
+        scheduler = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, "order-fulfilment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /*
+     * Called once the order (or its new status) is committed. Tells the
+     * OrderStatusListeners, then starts the chain of timed transitions from
+     * that status, if a rule exists for it.
+     *
+     * With the journal enabled the pending transition is first appended to the
+     * OrderJournal; the returned future completes once that record is on disk
+     * (group-committed with its neighbours), so a restart cannot lose it.
+     */
+    public CompletableFuture<Void> onStatusChanged(Long orderId, Long customerId, Order.OrderStatus previous,
+            Order.OrderStatus status) {
+        return onStatusChanged(orderId, customerId, previous, status, null);
+    }
+
+    // lane: the order's OrderPriorityLanes lane, or null to look it up when the transition is due
+    public CompletableFuture<Void> onStatusChanged(Long orderId, Long customerId, Order.OrderStatus previous,
+            Order.OrderStatus status, Order.OrderPriority lane) {
+        notifyListeners(orderId, customerId, previous, status);
+        Transition transition = transitions.get(status);
+        if (transition == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!orderJournal.isEnabled()) {
+            schedule(orderId, status, transition, transition.delayMs(), 1, NOT_JOURNALED, lane);
+            return CompletableFuture.completedFuture(null);
+        }
+        OrderJournal.Appended appended = orderJournal.append(orderId, status, System.currentTimeMillis());
+        schedule(orderId, status, transition, transition.delayMs(), 1, appended.offset(), lane);
+        return appended.durable();
+    }
+
+    private void notifyListeners(Long orderId, Long customerId, Order.OrderStatus previous,
+            Order.OrderStatus status) {
+        for (OrderStatusListener listener : orderStatusListeners) {
+            try {
+                listener.onOrderStatusChanged(orderId, customerId, previous, status);
+            } catch (RuntimeException e) {
+                System.err.println("Order status listener failed for order " + orderId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void schedule(Long orderId, Order.OrderStatus from, Transition transition, long delayMs, int attempt,
+            long journalOffset, Order.OrderPriority lane) {
+        inFlight.incrementAndGet();
+        scheduler.schedule(() -> {
+            inFlight.decrementAndGet();
+            Order.OrderPriority resolved;
+            try {
+                resolved = lane != null ? lane : orderPriorityLanes.laneOf(orderId);
+            } catch (RuntimeException e) {
+                resolved = Order.OrderPriority.STANDARD;
+            }
+            Order.OrderPriority orderLane = resolved;
+            orderPriorityLanes.submit(orderLane, () -> apply(orderId, from, transition, attempt, journalOffset,
+                    orderLane));
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void apply(Long orderId, Order.OrderStatus from, Transition transition, int attempt,
+            long journalOffset, Order.OrderPriority lane) {
+        try {
+            int updated = jdbcTemplate.update(TRANSITION_SQL, transition.to().name(),
+                    Timestamp.valueOf(LocalDateTime.now()), orderId, from.name());
+            if (updated == 0) {
+                transitionsSkipped.incrementAndGet(); // cancelled, deleted or moved by hand
+            } else {
+                transitionsApplied.incrementAndGet();
+                onStatusChanged(orderId, null, from, transition.to(), lane); // journals the next step before this one is acked
+            }
+            ack(journalOffset);
+        } catch (RuntimeException e) {
+            if (attempt < MAX_ATTEMPTS) {
+                schedule(orderId, from, transition, 500L * attempt, attempt + 1, journalOffset, lane);
+            } else {
+                transitionsFailed.incrementAndGet();
+                ack(journalOffset); // would otherwise pin the journal's committed offset forever
+                System.err.println("Order " + orderId + " stuck in " + from + " after " + MAX_ATTEMPTS
+                        + " attempts: " + e.getMessage());
+            }
+        }
+    }
+
+    private void ack(long journalOffset) {
+        if (journalOffset != NOT_JOURNALED) {
+            orderJournal.ack(journalOffset);
+        }
+    }
+
+    /*
+     * Orders left mid-fulfilment by a restart resume with whatever delay they
+     * had left: replayed from the journal's committed offset, or found in the
+     * orders table when the journal is disabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInFlightOrders() throws IOException {
+        if (orderJournal.isEnabled()) {
+            long nowMillis = System.currentTimeMillis();
+            orderJournal.replay((offset, orderId, status, timestampMillis) -> {
+                Transition transition = transitions.get(status);
+                if (transition == null) {
+                    orderJournal.ack(offset); // rule removed since the record was written
+                    return;
+                }
+                long remaining = Math.max(0, transition.delayMs() - (nowMillis - timestampMillis));
+                schedule(orderId, status, transition, remaining, 1, offset, null);
+            });
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Order.OrderStatus, Transition> entry : transitions.entrySet()) {
+            Order.OrderStatus from = entry.getKey();
+            Transition transition = entry.getValue();
+            jdbcTemplate.query("SELECT id, updated_at, priority, total_amount FROM orders WHERE status = ?", rs -> {
+                Timestamp updatedAt = rs.getTimestamp(2);
+                long elapsed = updatedAt == null ? 0
+                        : Duration.between(updatedAt.toLocalDateTime(), now).toMillis();
+                String priority = rs.getString(3);
+                Order.OrderPriority lane = orderPriorityLanes.laneFor(
+                        priority == null ? null : Order.OrderPriority.valueOf(priority), rs.getBigDecimal(4));
+                schedule(rs.getLong(1), from, transition, Math.max(0, transition.delayMs() - elapsed), 1,
+                        NOT_JOURNALED, lane);
+            }, from.name());
+        }
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.get());
+        stats.put("transitionsApplied", transitionsApplied.get());
+        stats.put("transitionsSkipped", transitionsSkipped.get());
+        stats.put("transitionsFailed", transitionsFailed.get());
+        stats.put("threads", threads);
+        Map<String, String> rules = new LinkedHashMap<>();
+        transitions.forEach((from, t) -> rules.put(from.name(), t.to() + " after " + t.delayMs() + "ms"));
+        stats.put("transitions", rules);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,286 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Customer;
+import com.example.ecommerce.entity.Order;
+import com.example.ecommerce.exception.AdmissionRejectedException;
+import com.example.ecommerce.exception.CustomerNotFoundException;
+import com.example.ecommerce.exception.ServiceUnavailableException;
+import com.example.ecommerce.repository.CustomerRepository;
+import com.example.ecommerce.repository.OrderRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * Group commit for order intake.
+ *
+ * Concurrent createOrder calls are queued and written by a single writer
+ * thread: it takes the first waiting order, keeps collecting for at most
+ * maxWaitMs or until maxBatchSize orders are in hand, and writes them all in
+ * one transaction - one customer lookup (IN query), one batched INSERT
+ * (hibernate.jdbc.batch_size, ids from the pooled orders_seq sequence) and one
+ * commit. Under load the batch also fills up by itself: orders arriving while
+ * a batch is being written form the next one.
+ *
+ * A caller's future completes once its batch committed and the order's
+ * fulfilment record is journaled. Orders for an unknown customer are rejected
+ * individually before the insert. If the insert itself fails, the batch's
+ * orders are retried one transaction each, so a single bad order only fails
+ * its own caller.
+ *
+ * With app.orders.intake.enabled=false every order is written on the caller's
+ * thread as a batch of one.
+ */
+@Component
+public class OrderIntakeBatcher {
+
+    private static final long JOURNAL_TIMEOUT_MS = 5000;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private OrderFulfilmentService orderFulfilmentService;
+
+    @Autowired
+    private OrderPriorityLanes orderPriorityLanes;
+
+    @Value("${app.orders.intake.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.orders.intake.max-batch-size:50}")
+    private int maxBatchSize;
+
+    @Value("${app.orders.intake.max-wait-ms:2}")
+    private long maxWaitMs;
+
+    @Value("${app.orders.intake.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private LinkedBlockingQueue<Pending> queue;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong ordersWritten = new AtomicLong();
+    private final AtomicLong ordersFailed = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+
+    private record Pending(Order order, CompletableFuture<Order> future) {
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        writer = new Thread(this::writeLoop, "order-intake");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Orders already queued are still written before shutdown completes
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(10_000);
+        }
+    }
+
+    public CompletableFuture<Order> submit(Order order) {
+        Pending pending = new Pending(order, new CompletableFuture<>());
+        if (!enabled) {
+            write(List.of(pending));
+            return pending.future();
+        }
+        if (!running) {
+            throw new ServiceUnavailableException("Order intake is shutting down", 5);
+        }
+        if (!queue.offer(pending)) {
+            throw new AdmissionRejectedException("Order intake queue is full, retry later", 1);
+        }
+        return pending.future();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // write() completes every future itself; this only guards the loop
+                System.err.println("Order intake writer error: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        List<Order> saved;
+        try {
+            saved = transactionTemplate.execute(status -> insert(batch));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+                return;
+            }
+            fallbacks.incrementAndGet();
+            for (Pending pending : batch) {
+                write(List.of(pending));
+            }
+            return;
+        }
+        int written = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            if (saved.get(i) == null) {
+                fail(pending, new CustomerNotFoundException(pending.order().getCustomer().getId()));
+            } else {
+                written++;
+                complete(pending, saved.get(i));
+            }
+        }
+        batches.incrementAndGet();
+        ordersWritten.addAndGet(written);
+        largestBatch.accumulateAndGet(written, Math::max);
+    }
+
+    /*
+     * Runs inside the batch transaction. Returns the saved orders in batch
+     * order; orders whose customer does not exist are left out of the insert
+     * and come back as null.
+     */
+    private List<Order> insert(List<Pending> batch) {
+        Set<Long> customerIds = new HashSet<>();
+        for (Pending pending : batch) {
+            Customer customer = pending.order().getCustomer();
+            if (customer != null && customer.getId() != null) {
+                customerIds.add(customer.getId());
+            }
+        }
+        Map<Long, Customer> customers = customerRepository.findAllById(customerIds).stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity()));
+
+        List<Order> orders = new ArrayList<>(batch.size());
+        List<Order> result = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            Order order = pending.order();
+            /*
+             * The request only carries the customer id. Customer is versioned, so
+             * a detached {"id": ...} with a null version would be taken for a new
+             * entity: attach the persistent customer instead.
+             */
+            if (order.getCustomer() != null && order.getCustomer().getId() != null) {
+                Long customerId = order.getCustomer().getId();
+                Customer customer = customers.get(customerId);
+                if (customer == null) {
+                    result.add(null);
+                    continue;
+                }
+                order.setCustomer(customer);
+            }
+            // always a new row: an id or version sent by the client, or left
+            // by a rolled back batch, would turn persist into merge
+            order.setId(null);
+            order.setVersion(null);
+            orders.add(order);
+            result.add(order);
+        }
+        orderRepository.saveAll(orders); // persist(): the saved instance is the one passed in
+        orderRepository.flush();
+        return result;
+    }
+
+    /*
+     * The order is only acknowledged once its fulfilment record is durable in
+     * the journal. A group commit normally takes a few milliseconds; if the
+     * journal stalls, the order (already committed) is still returned and the
+     * startup scan of the orders table remains the safety net.
+     */
+    private void complete(Pending pending, Order saved) {
+        CompletableFuture<Void> durable;
+        try {
+            durable = orderFulfilmentService.onStatusChanged(saved.getId(), saved.getCustomer().getId(), null,
+                    saved.getStatus(), orderPriorityLanes.laneFor(saved.getPriority(), saved.getTotalAmount()));
+        } catch (RuntimeException e) {
+            System.err.println("Order " + saved.getId() + " not journaled: " + e.getMessage());
+            pending.future().complete(saved);
+            return;
+        }
+        durable.orTimeout(JOURNAL_TIMEOUT_MS, TimeUnit.MILLISECONDS).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Order " + saved.getId() + " not journaled: " + error.getMessage());
+            }
+            pending.future().complete(saved);
+        });
+    }
+
+    private void fail(Pending pending, RuntimeException e) {
+        ordersFailed.incrementAndGet();
+        pending.future().completeExceptionally(e);
+    }
+
+    public Map<String, Object> stats() {
+        long batchCount = batches.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queue == null ? 0 : queue.size());
+        stats.put("batches", batchCount);
+        stats.put("ordersWritten", ordersWritten.get());
+        stats.put("ordersFailed", ordersFailed.get());
+        stats.put("averageBatchSize", batchCount == 0 ? 0.0 : (double) ordersWritten.get() / batchCount);
+        stats.put("largestBatch", largestBatch.get());
+        stats.put("fallbacks", fallbacks.get());
+        return stats;
+    }
+}
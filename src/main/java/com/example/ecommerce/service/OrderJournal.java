@@ -0,0 +1,513 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Order;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+ * Durable, append-only journal of fulfilment work, on memory-mapped segment
+ * files.
+ *
+ * Every order entering a status that has a fulfilment transition is appended
+ * as one record: [int length][int crc32][long orderId][int status][long timestamp].
+ * A record's offset is segmentBase + position, so offsets grow monotonically
+ * across segments.
+ *
+ * - appends copy the record into the mapped segment under a short lock; they
+ * do not fsync themselves
+ * - a single flusher thread forces the segment and completes the durability
+ * futures of every record written up to that point: all appends that arrive
+ * during one force share the next one (group commit)
+ * - when a record does not fit, the segment is forced and a new one is
+ * created (rolling); fully consumed segments are deleted
+ * - the consumer (OrderFulfilmentService) acks a record once its transition
+ * ran. The committed consumer offset is the low watermark of the unacked
+ * records and is checkpointed to consumer.offset periodically
+ * - on startup the segments are scanned (a CRC mismatch or zero length marks
+ * the end of valid data) and everything from the committed offset on is
+ * replayed. Replay is at-least-once; the consumer's transitions are
+ * conditional on the current status, so a replayed record is harmless
+ * - the journal only means something for the database it was written
+ * against: the instance file holds that database's id (DatabaseInstance).
+ * Records found next to another id (an in-memory database recreated on
+ * restart hands out the same order ids again) are discarded, not replayed
+ * onto unrelated orders. Disabled by default for that reason; enable it with
+ * a persistent datasource
+ */
+@Component
+public class OrderJournal {
+
+    private static final int HEADER_BYTES = 8; // length + crc
+    private static final int PAYLOAD_BYTES = 20; // orderId + status + timestamp
+    private static final int RECORD_BYTES = HEADER_BYTES + PAYLOAD_BYTES;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSET_FILE = "consumer.offset";
+    private static final String INSTANCE_FILE = "instance";
+
+    @Autowired
+    private DatabaseInstance databaseInstance;
+
+    @Value("${app.orders.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.orders.journal.dir:data/order-journal}")
+    private String directory;
+
+    @Value("${app.orders.journal.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    public record Appended(long offset, CompletableFuture<Void> durable) {
+    }
+
+    public interface ReplayHandler {
+        void onRecord(long offset, long orderId, Order.OrderStatus status, long timestampMillis);
+    }
+
+    private Path dir;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition written = appendLock.newCondition();
+    private final ReentrantLock forceLock = new ReentrantLock(); // a segment is never closed mid-force
+    private Segment current; // guarded by appendLock
+    private long nextOffset; // guarded by appendLock
+    private long recoveredEnd; // end of valid data found at startup, replay stops here
+    private long committedOffset;
+    private volatile long checkpointedOffset = -1;
+
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentSkipListSet<Long> unacked = new ConcurrentSkipListSet<>();
+    private volatile long forcedOffset;
+    private Thread flusher;
+    private volatile boolean running;
+    private volatile boolean replayComplete; // no checkpoint may skip records before they were replayed
+
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong forces = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong segmentsRolled = new AtomicLong();
+    private final AtomicLong segmentsDeleted = new AtomicLong();
+    private long segmentsDiscarded; // written for another database, found at startup
+
+    private record Waiter(long endOffset, CompletableFuture<Void> future) {
+    }
+
+    private static final class Segment {
+        final long base;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        boolean closed; // guarded by forceLock
+
+        Segment(long base, FileChannel channel, MappedByteBuffer buffer) {
+            this.base = base;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            channel.close();
+            closed = true;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------------------------------------------------------------
+    // Startup: recover the write position and the committed offset
+    // ---------------------------------------------------------------------
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        claimForDatabase();
+        committedOffset = readOffsetFile();
+
+        List<Long> bases = segmentBases();
+        if (bases.isEmpty()) {
+            current = openSegment(0);
+            nextOffset = 0;
+        } else {
+            current = openSegment(bases.get(bases.size() - 1));
+            nextOffset = current.base + scanEnd(current);
+        }
+        recoveredEnd = nextOffset;
+        // records acked before a crash but never made durable: nothing to skip beyond the end
+        committedOffset = Math.min(committedOffset, recoveredEnd);
+        forcedOffset = nextOffset;
+        checkpointedOffset = committedOffset;
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "order-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /*
+     * Drops segments and offset left by another database (or by a journal that
+     * predates the instance file, which cannot be attributed) and records the
+     * current database's id.
+     */
+    private void claimForDatabase() throws IOException {
+        String instanceId = databaseInstance.id();
+        Path file = dir.resolve(INSTANCE_FILE);
+        String recorded = Files.exists(file) ? Files.readString(file).trim() : null;
+        if (instanceId.equals(recorded)) {
+            return;
+        }
+        List<Long> stale = segmentBases();
+        for (long base : stale) {
+            Files.deleteIfExists(dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX)));
+        }
+        Files.deleteIfExists(dir.resolve(OFFSET_FILE));
+        if (!stale.isEmpty()) {
+            segmentsDiscarded = stale.size();
+            System.err.println("Order journal in " + dir.toAbsolutePath() + " was written for another database, "
+                    + "discarded " + stale.size() + " segment(s) without replay");
+        }
+        Path temp = dir.resolve(INSTANCE_FILE + ".tmp");
+        Files.writeString(temp, instanceId);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private long readOffsetFile() throws IOException {
+        Path file = dir.resolve(OFFSET_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        String content = Files.readString(file).trim();
+        return content.isEmpty() ? 0 : Long.parseLong(content);
+    }
+
+    private List<Long> segmentBases() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Segment openSegment(long base) throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(base, channel, buffer);
+    }
+
+    // position after the last valid record of a segment
+    private static int scanEnd(Segment segment) {
+        ByteBuffer view = segment.buffer.duplicate();
+        int position = 0;
+        while (readRecord(view, position) != null) {
+            position += RECORD_BYTES;
+        }
+        return position;
+    }
+
+    // null at the end of valid data (zero length, torn write or end of segment)
+    private static long[] readRecord(ByteBuffer view, int position) {
+        if (position + RECORD_BYTES > view.capacity()) {
+            return null;
+        }
+        int length = view.getInt(position);
+        if (length != PAYLOAD_BYTES) {
+            return null;
+        }
+        int crc = view.getInt(position + 4);
+        long orderId = view.getLong(position + 8);
+        int status = view.getInt(position + 16);
+        long timestamp = view.getLong(position + 20);
+        if (crc != checksum(orderId, status, timestamp)) {
+            return null;
+        }
+        return new long[] { orderId, status, timestamp };
+    }
+
+    private static int checksum(long orderId, int status, long timestamp) {
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_BYTES);
+        payload.putLong(orderId).putInt(status).putLong(timestamp).flip();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /*
+     * Replays every record from the committed offset up to the end of the data
+     * found at startup. Replayed records count as unacked until the handler's
+     * work acks them.
+     */
+    public void replay(ReplayHandler handler) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        try {
+            replaySegments(handler);
+        } finally {
+            replayComplete = true;
+        }
+    }
+
+    private void replaySegments(ReplayHandler handler) throws IOException {
+        for (long base : segmentBases()) {
+            if (base + segmentBytes <= committedOffset || base >= recoveredEnd) {
+                continue;
+            }
+            Segment segment = base == current.base ? current : openSegment(base);
+            try {
+                ByteBuffer view = segment.buffer.duplicate();
+                int position = (int) Math.max(0, committedOffset - base);
+                long[] record;
+                while (base + position < recoveredEnd && (record = readRecord(view, position)) != null) {
+                    long offset = base + position;
+                    unacked.add(offset);
+                    replayed.incrementAndGet();
+                    handler.onRecord(offset, record[0], Order.OrderStatus.values()[(int) record[1]], record[2]);
+                    position += RECORD_BYTES;
+                }
+            } finally {
+                if (segment != current) {
+                    segment.channel.close();
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Append and group commit
+    // ---------------------------------------------------------------------
+
+    public Appended append(long orderId, Order.OrderStatus status, long timestampMillis) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        int crc = checksum(orderId, status.ordinal(), timestampMillis);
+        long offset;
+        appendLock.lock();
+        try {
+            if (nextOffset - current.base + RECORD_BYTES > segmentBytes) {
+                roll();
+            }
+            int position = (int) (nextOffset - current.base);
+            MappedByteBuffer buffer = current.buffer;
+            buffer.putLong(position + 8, orderId);
+            buffer.putInt(position + 16, status.ordinal());
+            buffer.putLong(position + 20, timestampMillis);
+            buffer.putInt(position + 4, crc);
+            buffer.putInt(position, PAYLOAD_BYTES);
+            offset = nextOffset;
+            nextOffset += RECORD_BYTES;
+            unacked.add(offset);
+            waiters.add(new Waiter(nextOffset, durable));
+            written.signal();
+        } finally {
+            appendLock.unlock();
+        }
+        appends.incrementAndGet();
+        return new Appended(offset, durable);
+    }
+
+    // caller holds appendLock; closing forces the old segment, so all of it is durable
+    private void roll() {
+        forceLock.lock();
+        try {
+            Segment old = current;
+            current = openSegment(old.base + segmentBytes);
+            old.close();
+            nextOffset = current.base;
+            segmentsRolled.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not roll order journal segment", e);
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            Segment segment;
+            long target;
+            appendLock.lock();
+            try {
+                while (running && nextOffset == forcedOffset) {
+                    written.awaitUninterruptibly();
+                }
+                segment = current;
+                target = nextOffset;
+            } finally {
+                appendLock.unlock();
+            }
+            forceLock.lock();
+            try {
+                if (!segment.closed) { // a roll already forced a closed segment
+                    segment.buffer.force();
+                    forces.incrementAndGet();
+                }
+                forcedOffset = target;
+                completeWaiters(target, null);
+            } catch (RuntimeException e) {
+                System.err.println("Order journal force failed: " + e.getMessage());
+                completeWaiters(target, e);
+            } finally {
+                forceLock.unlock();
+            }
+        }
+    }
+
+    private void completeWaiters(long upTo, RuntimeException failure) {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null && waiter.endOffset() <= upTo) {
+            waiters.poll();
+            if (failure == null) {
+                waiter.future().complete(null);
+            } else {
+                waiter.future().completeExceptionally(failure);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Consumer offsets
+    // ---------------------------------------------------------------------
+
+    public void ack(long offset) {
+        unacked.remove(offset);
+    }
+
+    /*
+     * The committed offset is the lowest unacked record (everything before it
+     * is done), or the write position when nothing is pending. Written to a
+     * temp file and atomically moved over consumer.offset.
+     */
+    @Scheduled(fixedDelayString = "${app.orders.journal.checkpoint-interval-ms:1000}")
+    public void checkpoint() {
+        if (!enabled || !running || !replayComplete) {
+            return;
+        }
+        long lowWatermark;
+        appendLock.lock();
+        try {
+            lowWatermark = unacked.isEmpty() ? nextOffset : unacked.first();
+        } finally {
+            appendLock.unlock();
+        }
+        lowWatermark = Math.min(lowWatermark, forcedOffset);
+        if (lowWatermark == checkpointedOffset) {
+            return;
+        }
+        try {
+            Path temp = dir.resolve(OFFSET_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(Long.toString(lowWatermark).getBytes()));
+                channel.force(true);
+            }
+            Files.move(temp, dir.resolve(OFFSET_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            checkpointedOffset = lowWatermark;
+            deleteConsumedSegments(lowWatermark);
+        } catch (IOException e) {
+            System.err.println("Order journal checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    private void deleteConsumedSegments(long committed) throws IOException {
+        long currentBase;
+        appendLock.lock();
+        try {
+            currentBase = current.base;
+        } finally {
+            appendLock.unlock();
+        }
+        for (long base : segmentBases()) {
+            if (base != currentBase && base + segmentBytes <= committed) {
+                Files.deleteIfExists(dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX)));
+                segmentsDeleted.incrementAndGet();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!enabled || !running) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            running = false;
+            written.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            flusher.join(1000);
+            forceLock.lock();
+            try {
+                current.close();
+            } finally {
+                forceLock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Order journal close failed: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        stats.put("directory", dir.toAbsolutePath().toString());
+        stats.put("writeOffset", forcedOffset);
+        stats.put("committedOffset", checkpointedOffset);
+        stats.put("unacked", unacked.size());
+        stats.put("appends", appends.get());
+        stats.put("forces", forces.get());
+        stats.put("replayed", replayed.get());
+        stats.put("segmentsRolled", segmentsRolled.get());
+        stats.put("segmentsDeleted", segmentsDeleted.get());
+        stats.put("segmentsDiscarded", segmentsDiscarded);
+        try {
+            stats.put("segments", new ArrayList<>(segmentBases()));
+        } catch (IOException e) {
+            stats.put("segments", "unavailable: " + e.getMessage());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Order;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Priority lanes for order processing work (fulfilment transitions).
+ *
+ * Every order belongs to a lane: its explicit Order.priority, otherwise HIGH
+ * when totalAmount >= highValueThreshold, otherwise STANDARD. Each lane has
+ * its own queue and its own workers, so an express order never waits behind
+ * a backlog of routine ones.
+ *
+ * A worker always serves its home lane first. When that lane is empty it
+ * steals from the others instead of idling; the lane to steal from is chosen
+ * by smooth weighted round-robin over the non-empty lanes, so spare capacity
+ * is shared in proportion to the lane weights and STANDARD is never starved.
+ *
+ * One semaphore counts the queued tasks of all lanes: a worker that acquired
+ * a permit is guaranteed to find a task in some lane.
+ *
+ * Per lane, depth and queue wait time (average, p50/p99 over the last
+ * WAIT_SAMPLES tasks, max) are exposed by stats().
+ */
+@Component
+public class OrderPriorityLanes {
+
+    private static final int WAIT_SAMPLES = 1024;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.orders.lanes.workers:EXPRESS:2,HIGH:1,STANDARD:1}")
+    private String workerRules;
+
+    @Value("${app.orders.lanes.weights:EXPRESS:8,HIGH:3,STANDARD:1}")
+    private String weightRules;
+
+    @Value("${app.orders.lanes.high-value-threshold:500}")
+    private BigDecimal highValueThreshold;
+
+    private final Map<Order.OrderPriority, Lane> lanes = new EnumMap<>(Order.OrderPriority.class);
+    private final Semaphore queued = new Semaphore(0);
+    private final Object stealLock = new Object();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private record Task(Runnable work, long enqueuedNanos) {
+    }
+
+    private static final class Lane {
+        final Order.OrderPriority priority;
+        final int workers;
+        final int weight;
+        final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong stolen = new AtomicLong();
+        final AtomicLong waitNanosTotal = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLongArray recentWaits = new AtomicLongArray(WAIT_SAMPLES);
+        final AtomicLong waitSamples = new AtomicLong();
+        int currentWeight; // smooth weighted round-robin, guarded by stealLock
+
+        Lane(Order.OrderPriority priority, int workers, int weight) {
+            this.priority = priority;
+            this.workers = workers;
+            this.weight = weight;
+        }
+
+        Task poll() {
+            Task task = tasks.poll();
+            if (task != null) {
+                depth.decrementAndGet();
+                long wait = System.nanoTime() - task.enqueuedNanos();
+                waitNanosTotal.addAndGet(wait);
+                maxWaitNanos.accumulateAndGet(wait, Math::max);
+                recentWaits.set((int) (waitSamples.getAndIncrement() % WAIT_SAMPLES), wait);
+            }
+            return task;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        Map<Order.OrderPriority, Integer> workerCounts = parse(workerRules, "app.orders.lanes.workers");
+        Map<Order.OrderPriority, Integer> weights = parse(weightRules, "app.orders.lanes.weights");
+        for (Order.OrderPriority priority : Order.OrderPriority.values()) {
+            lanes.put(priority, new Lane(priority, workerCounts.getOrDefault(priority, 0),
+                    Math.max(1, weights.getOrDefault(priority, 1))));
+        }
+        if (lanes.values().stream().mapToInt(lane -> lane.workers).sum() == 0) {
+            throw new IllegalStateException("app.orders.lanes.workers must start at least one worker");
+        }
+        running = true;
+        for (Lane lane : lanes.values()) {
+            for (int i = 1; i <= lane.workers; i++) {
+                Thread worker = new Thread(() -> work(lane),
+                        "order-lane-" + lane.priority.name().toLowerCase() + "-" + i);
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+        }
+    }
+
+    // LANE:n,LANE:n
+    private static Map<Order.OrderPriority, Integer> parse(String rules, String property) {
+        Map<Order.OrderPriority, Integer> values = new EnumMap<>(Order.OrderPriority.class);
+        for (String rule : rules.split(",")) {
+            String[] laneAndValue = rule.trim().split(":");
+            if (laneAndValue.length != 2) {
+                throw new IllegalStateException("Invalid " + property + " entry '" + rule + "', expected LANE:n");
+            }
+            values.put(Order.OrderPriority.valueOf(laneAndValue[0].trim()),
+                    Integer.parseInt(laneAndValue[1].trim()));
+        }
+        return values;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(5000);
+        }
+    }
+
+    public Order.OrderPriority laneFor(Order.OrderPriority priority, BigDecimal totalAmount) {
+        if (priority != null) {
+            return priority;
+        }
+        return totalAmount != null && totalAmount.compareTo(highValueThreshold) >= 0
+                ? Order.OrderPriority.HIGH : Order.OrderPriority.STANDARD;
+    }
+
+    // For work that only knows the order id (journal replay); a missing order goes to STANDARD
+    public Order.OrderPriority laneOf(Long orderId) {
+        Order.OrderPriority lane = jdbcTemplate.query("SELECT priority, total_amount FROM orders WHERE id = ?",
+                rs -> rs.next()
+                        ? laneFor(rs.getString(1) == null ? null : Order.OrderPriority.valueOf(rs.getString(1)),
+                                rs.getBigDecimal(2))
+                        : null,
+                orderId);
+        return lane == null ? Order.OrderPriority.STANDARD : lane;
+    }
+
+    public void submit(Order.OrderPriority priority, Runnable work) {
+        if (!running) {
+            work.run(); // shutting down: the workers are gone
+            return;
+        }
+        Lane lane = lanes.get(priority);
+        lane.tasks.add(new Task(work, System.nanoTime()));
+        lane.depth.incrementAndGet();
+        lane.submitted.incrementAndGet();
+        queued.release();
+    }
+
+    private void work(Lane home) {
+        while (running) {
+            try {
+                if (!queued.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Task task = home.poll();
+            Lane from = home;
+            while (task == null) {
+                from = stealTarget(home);
+                if (from == null) {
+                    Thread.onSpinWait(); // our task is being taken by a home worker that will leave theirs
+                    from = home;
+                }
+                task = from.poll();
+            }
+            if (from != home) {
+                from.stolen.incrementAndGet();
+            }
+            try {
+                task.work().run();
+            } catch (RuntimeException e) {
+                System.err.println("Order lane task failed in " + from.priority + ": " + e.getMessage());
+            } finally {
+                from.completed.incrementAndGet();
+            }
+        }
+    }
+
+    // Smooth weighted round-robin over the other non-empty lanes
+    private Lane stealTarget(Lane home) {
+        synchronized (stealLock) {
+            Lane best = null;
+            int total = 0;
+            for (Lane lane : lanes.values()) {
+                if (lane == home || lane.depth.get() <= 0) {
+                    continue;
+                }
+                lane.currentWeight += lane.weight;
+                total += lane.weight;
+                if (best == null || lane.currentWeight > best.currentWeight) {
+                    best = lane;
+                }
+            }
+            if (best != null) {
+                best.currentWeight -= total;
+            }
+            return best;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("highValueThreshold", highValueThreshold);
+        for (Lane lane : lanes.values()) {
+            long completed = lane.completed.get();
+            int samples = (int) Math.min(lane.waitSamples.get(), WAIT_SAMPLES);
+            long[] waits = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                waits[i] = lane.recentWaits.get(i);
+            }
+            Arrays.sort(waits);
+            Map<String, Object> laneStats = new LinkedHashMap<>();
+            laneStats.put("workers", lane.workers);
+            laneStats.put("weight", lane.weight);
+            laneStats.put("depth", lane.depth.get());
+            laneStats.put("submitted", lane.submitted.get());
+            laneStats.put("completed", completed);
+            laneStats.put("stolen", lane.stolen.get());
+            laneStats.put("waitMsAvg", lane.waitSamples.get() == 0 ? 0.0
+                    : lane.waitNanosTotal.get() / 1_000_000.0 / lane.waitSamples.get());
+            laneStats.put("waitMsP50", samples == 0 ? 0.0 : waits[samples / 2] / 1_000_000.0);
+            laneStats.put("waitMsP99", samples == 0 ? 0.0 : waits[Math.min(samples - 1, samples * 99 / 100)] / 1_000_000.0);
+            laneStats.put("waitMsMax", lane.maxWaitNanos.get() / 1_000_000.0);
+            stats.put(lane.priority.name(), laneStats);
+        }
+        return stats;
+    }
+}
@@ -1,29 +1,45 @@
 package com.example.ecommerce.service;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeoutException;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.example.ecommerce.dto.OrderPage;
+import com.example.ecommerce.dto.OrderSummary;
+import com.example.ecommerce.repository.CustomerRepository;
 import com.example.ecommerce.repository.OrderRepository;
 
-import jakarta.annotation.PostConstruct;
-import jakarta.annotation.PreDestroy;
 import jakarta.transaction.Transactional;
 
+import com.example.ecommerce.entity.Customer;
 import com.example.ecommerce.entity.Order;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import com.example.ecommerce.exception.AdmissionRejectedException;
+import com.example.ecommerce.exception.FeatureDisabledException;
+import com.example.ecommerce.exception.InvalidRequestException;
 import com.example.ecommerce.exception.OrderNotFoundException;
 
 import java.util.concurrent.Executor;
@@ -33,145 +49,354 @@ public class OrderService {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private CustomerRepository customerRepository;
+
     @Autowired
     @Qualifier("taskExecutor")
     private Executor taskExecutor;
 
-    private final BlockingQueue<Order> orderProcessingQueue = new ArrayBlockingQueue<>(1000);
-    private final ExecutorService orderProcessor = Executors.newFixedThreadPool(3);
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    @Autowired
+    private OrderFulfilmentService orderFulfilmentService;
 
-    @PostConstruct
-    public void initOrderProcessor() {
-        for (int i = 0; i < 3; i++) {
-            orderProcessor.submit(this::processOrdersFromQueue);
+    @Autowired
+    private OrderJournal orderJournal;
+
+    @Autowired
+    private OrderIntakeBatcher orderIntakeBatcher;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter admissionLimiter;
+
+    @Autowired
+    private OrderEventBroadcaster orderEventBroadcaster;
+
+    @Autowired
+    private OrderArchive orderArchive;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private OrderPriorityLanes orderPriorityLanes;
+
+    private static final long INTAKE_TIMEOUT_SECONDS = 30;
+    private static final int MAX_STATUS_ATTEMPTS = 5;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_ARCHIVE_PAGE_SIZE = 1000;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+    /*
+     * Written by the OrderIntakeBatcher together with concurrent orders: one
+     * batched insert and one commit per batch. No transaction or lock is held
+     * here while the caller waits for its batch.
+     *
+     * Admission is decided first by the AdaptiveConcurrencyLimiter: above the
+     * current limit the order is rejected immediately (429) rather than
+     * waiting in a queue that is already too long.
+     */
+    public OrderSummary createOrder(Order order) {
+        AdaptiveConcurrencyLimiter.Permit permit = admissionLimiter.acquire();
+        return awaitCreated(submit(order, permit), permit);
+    }
+
+    // Queues the order; when it cannot even be queued the permit is settled and the failure thrown
+    private CompletableFuture<OrderSummary> submit(Order order, AdaptiveConcurrencyLimiter.Permit permit) {
+        try {
+            return orderIntakeBatcher.submit(order).thenApply(OrderSummary::from);
+        } catch (AdmissionRejectedException e) {
+            permit.drop(); // intake queue full
+            throw e;
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
         }
     }
 
-    @Transactional
-    public Order createOrder(Order order) {
-        rwLock.writeLock().lock();
+    // A timeout only ends the wait: the order stays queued and may still be written
+    private OrderSummary awaitCreated(CompletableFuture<OrderSummary> created,
+            AdaptiveConcurrencyLimiter.Permit permit) {
+        boolean overloaded = false;
         try {
-            Order savedOrder = orderRepository.save(order);
-            try {
-                boolean added = orderProcessingQueue.offer(savedOrder, 5, TimeUnit.SECONDS);
-                /*
-                 * You're using:
-                 * 
-                 * BlockingQueue<Order> as a thread-safe buffer
-                 * 
-                 * offer(...) to produce (enqueue) an order
-                 * 
-                 * take() in a separate thread to consume (process) the order
-                 */
-                if (!added) {
-                    throw new RuntimeException("Failed to queue order for processing: queue full");
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Failed to queue order for processing", e);
+            return created.get(INTAKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating order", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
             }
-            return savedOrder;
-
+            throw new IllegalStateException("Order creation failed", e.getCause());
+        } catch (TimeoutException e) {
+            overloaded = true;
+            throw new AdmissionRejectedException("Order creation timed out, retry later",
+                    admissionLimiter.retryAfterSeconds());
         } finally {
-            rwLock.writeLock().unlock();
+            if (overloaded) {
+                permit.drop();
+            } else {
+                permit.release();
+            }
         }
     }
 
-    // Producer-Consumer pattern for order processing
-    private void processOrdersFromQueue() {
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                Order order = orderProcessingQueue.take();
-                processOrder(order);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt(); // restore interrupt
-                break; // exit the loop gracefully
-            }
+    /*
+     * Client retries of a timed-out POST carry the same Idempotency-Key: the
+     * first request creates the order, every duplicate (concurrent or later)
+     * gets that same order back from the IdempotencyStore without touching
+     * admission, the intake queue or the database. The key follows the queued
+     * order, not the first request's wait: a retry after a timeout waits for
+     * that order instead of queuing a second one.
+     */
+    public IdempotencyStore.Outcome createOrder(Order order, String idempotencyKey) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new InvalidRequestException("Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH
+                    + " characters");
         }
+        return idempotencyStore.execute(idempotencyKey, fingerprint(order), () -> {
+            AdaptiveConcurrencyLimiter.Permit permit = admissionLimiter.acquire();
+            CompletableFuture<OrderSummary> created = submit(order, permit);
+            return new IdempotencyStore.Submission(created, () -> awaitCreated(created, permit));
+        });
+    }
+
+    // What makes two create requests "the same order"; server-assigned fields are ignored
+    private static String fingerprint(Order order) {
+        Long customerId = order.getCustomer() == null ? null : order.getCustomer().getId();
+        String amount = order.getTotalAmount() == null ? null
+                : order.getTotalAmount().stripTrailingZeros().toPlainString();
+        return customerId + "|" + amount + "|" + order.getStatus() + "|" + order.getPriority() + "|"
+                + order.getOrderDate();
     }
 
+    /*
+     * Compare-and-set on the status column instead of a service-wide lock:
+     * read the current status, then UPDATE ... WHERE id = ? AND status = ?.
+     * If a concurrent writer (another request, the fulfilment scheduler) moved
+     * the order in between, the update matches nothing and we re-read and try
+     * again. Only writers to the same order ever contend, on its row.
+     */
     @Transactional
-    public Order updateOrderStatus(Long id, Order.OrderStatus newStatus) {
-        rwLock.writeLock().lock();
-        try {
-            Optional<Order> orderOpt = orderRepository.findById(id);
-            if (orderOpt.isEmpty()) {
-                throw new RuntimeException("Order not found with id:" + id);
+    public OrderSummary updateOrderStatus(Long id, Order.OrderStatus newStatus) {
+        for (int attempt = 1; attempt <= MAX_STATUS_ATTEMPTS; attempt++) {
+            Order.OrderStatus current = orderRepository.findStatusById(id)
+                    .orElseThrow(() -> new OrderNotFoundException(id));
+            if (current == newStatus) {
+                return orderRepository.findSummaryById(id).orElseThrow(() -> new OrderNotFoundException(id));
+            }
+            if (orderRepository.transitionStatus(id, current, newStatus, LocalDateTime.now()) == 1) {
+                OrderSummary updated = orderRepository.findSummaryById(id)
+                        .orElseThrow(() -> new OrderNotFoundException(id));
+                afterCommit(() -> orderFulfilmentService.onStatusChanged(id, updated.getCustomerId(), current,
+                        newStatus, orderPriorityLanes.laneFor(updated.getPriority(), updated.getTotalAmount())));
+                return updated;
             }
-
-            Order order = orderOpt.get();
-            order.setStatus(newStatus);
-            return orderRepository.save(order);
-        } finally {
-            rwLock.writeLock().unlock();
         }
+        throw new ObjectOptimisticLockingFailureException(Order.class, id);
     }
 
-    public Optional<Order> getOrder(Long id) {
-        rwLock.readLock().lock();
-        try {
-            return orderRepository.findById(id);
-        } finally {
-            rwLock.readLock().unlock();
+    // Falls through to the cold archive for orders moved out of the hot table
+    public Optional<OrderSummary> getOrder(Long id, boolean expandCustomer) {
+        Optional<OrderSummary> order = orderRepository.findSummaryById(id);
+        if (order.isEmpty() && orderArchive.isEnabled()) {
+            order = orderArchive.findById(id);
+        }
+        if (expandCustomer) {
+            order.ifPresent(summary -> expandCustomers(List.of(summary)));
         }
+        return order;
     }
 
     @Async
-    public CompletableFuture<List<Order>> getAllOrdersAsync() {
+    public CompletableFuture<List<OrderSummary>> getAllOrdersAsync(boolean expandCustomer) {
         return CompletableFuture.supplyAsync(() -> {
-            rwLock.readLock().lock();
-            try {
-                return orderRepository.findAll();
-            } finally {
-                rwLock.readLock().unlock();
-            }
+            List<OrderSummary> orders = orderRepository.findAllSummaries();
+            return expandCustomer ? expandCustomers(orders) : orders;
         }, taskExecutor);
     }
 
-    @Async
-    public void processOrder(Order order) {
-        try {
-            Thread.sleep(2000);
-            updateOrderStatus(order.getId(), Order.OrderStatus.PROCESSING);
-            Thread.sleep(3000);
-            updateOrderStatus(order.getId(), Order.OrderStatus.SHIPPED);
+    /*
+     * Deletes the order from whichever tier holds it. An archived copy is
+     * tombstoned even when the hot row existed too (an archiver run that died
+     * between writing its file and deleting the rows), or it would surface
+     * again once the hot row is gone.
+     */
+    @Transactional
+    public boolean deleteOrder(Long id) {
+        boolean deletedHot = orderRepository.deleteByIdReturningCount(id) > 0;
+        boolean deletedArchived = orderArchive.isEnabled() && orderArchive.delete(id);
+        if (!deletedHot && !deletedArchived) {
+            throw new OrderNotFoundException(id);
+        }
+        return true;
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    // A customer's orders, newest first, hot and archived merged into one keyset sequence
+    public OrderPage getOrdersByCustomer(Long customerId, String cursor, int limit, boolean expandCustomer) {
+        int pageSize = boundedPageSize(limit);
+        PageRequest page = PageRequest.of(0, pageSize + 1); // one extra row tells whether there is a next page
+        Cursor after = Cursor.decode(cursor);
+        List<OrderSummary> orders = after == null
+                ? orderRepository.findFirstPageByCustomer(customerId, page)
+                : orderRepository.findPageByCustomerBefore(customerId, after.orderDate(), after.id(), page);
+        if (orderArchive.isEnabled() && orderArchive.hasCustomer(customerId)) {
+            List<OrderSummary> archived = orderArchive.findByCustomer(customerId,
+                    after == null ? null : after.orderDate(), after == null ? null : after.id(), pageSize + 1);
+            orders = mergeNewestFirst(orders, archived, pageSize + 1);
         }
+        return toPage(orders, pageSize, expandCustomer);
     }
 
-    @Transactional
-    public boolean deleteOrder(Long id) {
-        rwLock.writeLock().lock();
-        try {
-            if (!orderRepository.existsById(id)) {
-                throw new OrderNotFoundException(id);
-            }
-            orderRepository.deleteById(id);
-            return true;
-        } finally {
-            rwLock.writeLock().unlock();
+    // Orders in a status, oldest first: the ops console works through the backlog in arrival order
+    public OrderPage getOrdersByStatus(Order.OrderStatus status, String cursor, int limit, boolean expandCustomer) {
+        int pageSize = boundedPageSize(limit);
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        Cursor after = Cursor.decode(cursor);
+        List<OrderSummary> orders = after == null
+                ? orderRepository.findFirstPageByStatus(status, page)
+                : orderRepository.findPageByStatusAfter(status, after.orderDate(), after.id(), page);
+        return toPage(orders, pageSize, expandCustomer);
+    }
+
+    // Both lists newest first; an order present in both tiers is taken from the hot table
+    private static List<OrderSummary> mergeNewestFirst(List<OrderSummary> hot, List<OrderSummary> archived,
+            int limit) {
+        Map<Long, OrderSummary> byId = new LinkedHashMap<>();
+        for (OrderSummary order : hot) {
+            byId.put(order.getId(), order);
+        }
+        for (OrderSummary order : archived) {
+            byId.putIfAbsent(order.getId(), order);
+        }
+        List<OrderSummary> merged = new ArrayList<>(byId.values());
+        merged.sort(Comparator.comparing(OrderSummary::getOrderDate).thenComparing(OrderSummary::getId).reversed());
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    public List<OrderSummary> getArchivedOrders(Long customerId, LocalDateTime from, LocalDateTime to, int limit,
+            boolean expandCustomer) {
+        if (!orderArchive.isEnabled()) {
+            throw new FeatureDisabledException("Order archive is disabled");
         }
+        List<OrderSummary> orders = orderArchive.findByDateRange(customerId, from, to,
+                Math.max(1, Math.min(limit, MAX_ARCHIVE_PAGE_SIZE)));
+        return expandCustomer ? expandCustomers(orders) : orders;
+    }
 
+    public Map<String, Object> runArchiver() {
+        return orderArchive.archive();
     }
 
-    public List<Order> getOrdersByCustomer(Long customerId) {
-        return orderRepository.findByCustomerId(customerId);
+    public Map<String, Object> getArchiveStats() {
+        return orderArchive.stats();
     }
 
-    public List<Order> getOrdersByStatus(Order.OrderStatus status) {
-        return orderRepository.findByStatus(status);
+    private static int boundedPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
-    @PreDestroy
-    public void shutdownOrderProcessor() {
-        orderProcessor.shutdownNow();
+    private OrderPage toPage(List<OrderSummary> orders, int pageSize, boolean expandCustomer) {
+        List<OrderSummary> page = orders.size() <= pageSize ? orders : new ArrayList<>(orders.subList(0, pageSize));
+        if (expandCustomer) {
+            expandCustomers(page);
+        }
+        if (orders.size() <= pageSize) {
+            return new OrderPage(page, null);
+        }
+        OrderSummary last = page.get(pageSize - 1);
+        return new OrderPage(page, new Cursor(last.getOrderDate(), last.getId()).encode());
+    }
+
+    // ?expand=customer: one IN query for the distinct customers of the whole list
+    private List<OrderSummary> expandCustomers(List<OrderSummary> orders) {
+        Set<Long> customerIds = new HashSet<>();
+        for (OrderSummary order : orders) {
+            customerIds.add(order.getCustomerId());
+        }
+        Map<Long, Customer> customers = new HashMap<>();
+        for (Customer customer : customerRepository.findAllById(customerIds)) {
+            customers.put(customer.getId(), customer);
+        }
+        for (OrderSummary order : orders) {
+            order.setCustomer(customers.get(order.getCustomerId()));
+        }
+        return orders;
+    }
+
+    /*
+     * Opaque page cursor: the (order_date, id) of the last order on the
+     * previous page, base64url encoded.
+     */
+    private record Cursor(LocalDateTime orderDate, Long id) {
+
+        String encode() {
+            String raw = orderDate + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            if (cursor == null || cursor.isBlank()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new InvalidRequestException("Invalid page cursor: " + cursor);
+            }
+        }
     }
 
+    // Orders currently waiting for their next fulfilment transition
     public int getQueueSize() {
-        return orderProcessingQueue.size();
+        return orderFulfilmentService.getInFlightCount();
+    }
+
+    public Map<String, Object> getFulfilmentStats() {
+        return orderFulfilmentService.stats();
+    }
+
+    public Map<String, Object> getJournalStats() {
+        return orderJournal.stats();
+    }
+
+    public SseEmitter subscribeToStatusChanges(Long customerId, Long orderId) {
+        return orderEventBroadcaster.subscribe(customerId, orderId);
+    }
+
+    public Map<String, Long> getEventStreamStats() {
+        return orderEventBroadcaster.stats();
+    }
+
+    public Map<String, Object> getAdmissionStats() {
+        return admissionLimiter.stats();
+    }
+
+    public Map<String, Object> getIntakeStats() {
+        return orderIntakeBatcher.stats();
+    }
+
+    public Map<String, Object> getLaneStats() {
+        return orderPriorityLanes.stats();
+    }
+
+    public Map<String, Long> getIdempotencyStats() {
+        return idempotencyStore.stats();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 }
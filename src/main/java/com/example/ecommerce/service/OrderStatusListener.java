@@ -0,0 +1,17 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Order;
+
+/*
+ * Notified by OrderFulfilmentService after an order status change committed:
+ * creation (previous = null), a manual status update, or a fulfilment
+ * transition. Called on the committing thread, so implementations must be
+ * cheap and must not block.
+ *
+ * customerId is null when the writer did not have it at hand (fulfilment
+ * transitions only carry the order id).
+ */
+public interface OrderStatusListener {
+
+    void onOrderStatusChanged(Long orderId, Long customerId, Order.OrderStatus previous, Order.OrderStatus status);
+}
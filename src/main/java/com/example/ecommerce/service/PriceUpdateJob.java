@@ -0,0 +1,123 @@
+package com.example.ecommerce.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Progress of one bulk repricing run. Counters are updated by the worker
+ * thread and read by the status endpoint, hence the atomics.
+ */
+public class PriceUpdateJob {
+
+    public enum Status {
+        RUNNING, COMPLETED, COMPLETED_WITH_ERRORS, FAILED
+    }
+
+    private static final int MAX_ERRORS = 20;
+
+    private final String id;
+    private final int totalProducts;
+    private final double multiplier;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    private volatile Status status = Status.RUNNING;
+    private volatile LocalDateTime finishedAt;
+    private volatile long elapsedNanos;
+
+    PriceUpdateJob(String id, int totalProducts, double multiplier) {
+        this.id = id;
+        this.totalProducts = totalProducts;
+        this.multiplier = multiplier;
+    }
+
+    void chunkDone(int size, int rowsUpdated) {
+        processed.addAndGet(size);
+        updated.addAndGet(rowsUpdated);
+        notFound.addAndGet(size - rowsUpdated);
+        chunks.incrementAndGet();
+    }
+
+    void chunkFailed(int size, String error) {
+        processed.addAndGet(size);
+        failed.addAndGet(size);
+        chunks.incrementAndGet();
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(error);
+        }
+    }
+
+    void finish(Status finalStatus) {
+        elapsedNanos = System.nanoTime() - startNanos;
+        finishedAt = LocalDateTime.now();
+        status = finalStatus;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getTotalProducts() {
+        return totalProducts;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getUpdated() {
+        return updated.get();
+    }
+
+    public long getNotFound() {
+        return notFound.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getElapsedMillis() {
+        long nanos = status == Status.RUNNING ? System.nanoTime() - startNanos : elapsedNanos;
+        return Duration.ofNanos(nanos).toMillis();
+    }
+
+    public long getProductsPerSecond() {
+        long millis = getElapsedMillis();
+        return millis == 0 ? processed.get() : processed.get() * 1000 / millis;
+    }
+}
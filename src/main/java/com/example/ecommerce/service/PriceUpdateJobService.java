@@ -0,0 +1,148 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.exception.AdmissionRejectedException;
+import com.example.ecommerce.exception.InvalidRequestException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+ * Bulk repricing as a tracked background job.
+ *
+ * Instead of one future + read + versioned update per product, the ids are
+ * cut into chunks and every chunk is a single set-based statement:
+ *
+ * UPDATE products SET price = ROUND(price * ?, 2), version = version + 1 ...
+ * WHERE id IN (...)
+ *
+ * Each chunk commits in its own transaction, so a bad chunk (e.g. a price
+ * overflowing the column) is reported without undoing the others, and the
+ * product cache is invalidated once per chunk.
+ */
+@Service
+public class PriceUpdateJobService {
+
+    private static final String REPRICE_SQL = "UPDATE products SET price = ROUND(price * :multiplier, 2), "
+            + "version = version + 1, updated_at = :now WHERE id IN (:ids)";
+    private static final int MAX_RETAINED_JOBS = 100;
+    private static final long REJECTED_RETRY_AFTER_SECONDS = 30;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private List<ProductChangeListener> productChangeListeners;
+
+    @Autowired
+    @Qualifier("priceUpdateExecutor")
+    private Executor priceUpdateExecutor;
+
+    @Value("${app.price-update.chunk-size:1000}")
+    private int chunkSize;
+
+    private final ConcurrentHashMap<String, PriceUpdateJob> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> jobOrder = new ConcurrentLinkedQueue<>();
+
+    public PriceUpdateJob start(List<Long> productIds, double multiplier) {
+        if (!(multiplier > 0)) {
+            throw new InvalidRequestException("multiplier must be positive");
+        }
+        List<Long> ids = productIds.stream().filter(id -> id != null).distinct().toList();
+
+        PriceUpdateJob job = new PriceUpdateJob(UUID.randomUUID().toString(), ids.size(), multiplier);
+        // registered before it can run, so a fast job is never reported as unknown
+        jobs.put(job.getId(), job);
+        jobOrder.add(job.getId());
+        try {
+            priceUpdateExecutor.execute(() -> run(job, ids));
+        } catch (RejectedExecutionException e) {
+            // never leave a job RUNNING that no thread will ever run
+            job.finish(PriceUpdateJob.Status.FAILED);
+            jobs.remove(job.getId());
+            jobOrder.remove(job.getId());
+            throw new AdmissionRejectedException("Too many price update jobs queued, retry later",
+                    REJECTED_RETRY_AFTER_SECONDS);
+        }
+        evictOldJobs();
+        return job;
+    }
+
+    public Optional<PriceUpdateJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(PriceUpdateJob job, List<Long> ids) {
+        try {
+            for (int from = 0; from < ids.size(); from += chunkSize) {
+                List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+                try {
+                    MapSqlParameterSource params = new MapSqlParameterSource()
+                            .addValue("multiplier", job.getMultiplier())
+                            .addValue("now", Timestamp.valueOf(LocalDateTime.now()))
+                            .addValue("ids", chunk);
+                    Integer rows = transactionTemplate.execute(status -> namedJdbcTemplate.update(REPRICE_SQL, params));
+                    productCache.invalidateAll(chunk);
+                    notifyListeners(chunk);
+                    job.chunkDone(chunk.size(), rows == null ? 0 : rows);
+                } catch (RuntimeException e) {
+                    job.chunkFailed(chunk.size(), "Products " + chunk.get(0) + ".." + chunk.get(chunk.size() - 1)
+                            + ": " + e.getMessage());
+                }
+            }
+            job.finish(job.getFailed() == 0 ? PriceUpdateJob.Status.COMPLETED
+                    : PriceUpdateJob.Status.COMPLETED_WITH_ERRORS);
+        } catch (RuntimeException e) {
+            job.finish(PriceUpdateJob.Status.FAILED);
+            System.err.println("Price update job " + job.getId() + " failed: " + e.getMessage());
+        }
+    }
+
+    // Keep the status of the most recent jobs only; running jobs are skipped, never dropped
+    private void evictOldJobs() {
+        int inspected = 0;
+        int retained = jobOrder.size();
+        while (jobOrder.size() > MAX_RETAINED_JOBS && inspected++ < retained) {
+            String oldest = jobOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            PriceUpdateJob job = jobs.get(oldest);
+            if (job != null && job.getStatus() == PriceUpdateJob.Status.RUNNING) {
+                jobOrder.add(oldest); // rotate it behind the others and look at the next one
+                continue;
+            }
+            jobs.remove(oldest);
+        }
+    }
+
+    private void notifyListeners(List<Long> chunk) {
+        for (ProductChangeListener listener : productChangeListeners) {
+            try {
+                listener.onProductsChanged(chunk);
+            } catch (RuntimeException e) {
+                System.err.println("Product change listener failed after repricing: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Product;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Bounded product cache with a W-TinyLFU style eviction policy.
+ *
+ * Read path (get):
+ * - one ConcurrentHashMap lookup, no lock
+ * - the access is recorded in a striped, lossy ring buffer and replayed into
+ * the policy later by whichever thread wins evictionLock.tryLock()
+ *
+ * Write path (put / invalidate) takes evictionLock. Writes are rare compared to
+ * reads, so this is the only place the policy (LRU deques + frequency sketch)
+ * is mutated.
+ *
+ * Policy:
+ * - a small admission window (LRU, ~1% of capacity) absorbs bursts of new keys
+ * - the main space is a segmented LRU: probation + protected (80%)
+ * - when the cache is full, the entry leaving the window only gets into the
+ * main space if the frequency sketch says it is used more often than the
+ * probation victim it would replace
+ *
+ * Every entry is tagged with the Product @Version it was read at. A put with an
+ * older version than the cached one is ignored, so a slow reader can never
+ * overwrite the result of a newer write. Values are copied in and out, so
+ * callers never share a mutable entity with the cache.
+ *
+ * A delete leaves no newer version behind, so the version check cannot stop a
+ * miss that read the row just before the delete from caching it again. Misses
+ * therefore fill through loadStamp()/putLoaded(): every invalidation bumps a
+ * generation counter (striped by id), and a load whose stripe was invalidated
+ * after its stamp was taken is dropped instead of cached.
+ */
+@Component
+public class ProductCache {
+
+    private static final int READ_BUFFER_SIZE = 64; // per stripe, power of two
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+    private static final int GENERATION_STRIPES = 1024; // power of two
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+
+    private final ConcurrentHashMap<Long, Node> data;
+    private final ReadBuffer[] readBuffers;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES); // bumped under evictionLock
+
+    // Guarded by evictionLock
+    private final AccessOrderDeque window = new AccessOrderDeque();
+    private final AccessOrderDeque probation = new AccessOrderDeque();
+    private final AccessOrderDeque protectedQueue = new AccessOrderDeque();
+    private final FrequencySketch sketch;
+    private int windowSize;
+    private int protectedSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejectedStaleWrites = new LongAdder();
+
+    public ProductCache(@Value("${app.product-cache.maximum-size:10000}") int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+        this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.sketch = new FrequencySketch(maximumSize);
+
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1) << 1;
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    // Lock-free: a hit is a map lookup plus a best-effort buffer write
+    public Product get(Long id) {
+        Node node = data.get(id);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(node);
+        return copyOf(node.value);
+    }
+
+    // Taken before reading the row from the database, see putLoaded()
+    public long loadStamp(Long id) {
+        return generations.get(stripe(id));
+    }
+
+    // Caches a row read on a miss, unless the id was invalidated since loadStamp()
+    public void putLoaded(Product product, long stamp) {
+        put(product, stamp);
+    }
+
+    // A committed write: always current, no stamp needed
+    public void put(Product product) {
+        put(product, -1);
+    }
+
+    private void put(Product product, long stamp) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        Product snapshot = copyOf(product);
+        long version = versionOf(snapshot);
+
+        evictionLock.lock();
+        try {
+            if (stamp >= 0 && generations.get(stripe(snapshot.getId())) != stamp) {
+                rejectedStaleWrites.increment(); // deleted or changed while it was being read
+                return;
+            }
+            Node existing = data.get(snapshot.getId());
+            if (existing != null) {
+                if (version < existing.version) {
+                    rejectedStaleWrites.increment();
+                    return;
+                }
+                existing.value = snapshot;
+                existing.version = version;
+                sketch.increment(existing.key);
+                onAccess(existing);
+                return;
+            }
+
+            Node node = new Node(snapshot.getId(), snapshot, version);
+            data.put(node.key, node);
+            sketch.increment(node.key);
+            node.queue = Node.WINDOW;
+            window.addLast(node);
+            windowSize++;
+            evictEntries();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(Long id) {
+        evictionLock.lock();
+        try {
+            generations.incrementAndGet(stripe(id));
+            Node node = data.remove(id);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidateAll(Collection<Long> ids) {
+        evictionLock.lock();
+        try {
+            for (Long id : ids) {
+                generations.incrementAndGet(stripe(id));
+                Node node = data.remove(id);
+                if (node != null) {
+                    unlink(node);
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public Map<String, Long> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) data.size());
+        stats.put("maximumSize", (long) maximumSize);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatePercent", requests == 0 ? 0 : hitCount * 100 / requests);
+        stats.put("evictions", evictions.sum());
+        stats.put("rejectedStaleWrites", rejectedStaleWrites.sum());
+        return stats;
+    }
+
+    public static Product copyOf(Product p) {
+        return new Product(p.getId(), p.getName(), p.getDescription(), p.getPrice(), p.getStockQuantity(),
+                p.getCategory(), p.getCreatedAt(), p.getUpdatedAt(), p.getVersion());
+    }
+
+    private static int stripe(Long id) {
+        long h = id * 0x9e3779b97f4a7c15L;
+        return (int) (h >>> 32) & (GENERATION_STRIPES - 1);
+    }
+
+    private static long versionOf(Product p) {
+        return p.getVersion() == null ? -1L : p.getVersion();
+    }
+
+    // ---------------------------------------------------------------------
+    // Policy maintenance (everything below runs under evictionLock)
+    // ---------------------------------------------------------------------
+
+    private void afterRead(Node node) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        int pending = buffer.offer(node);
+        if (pending >= READ_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+    }
+
+    private void onAccess(Node node) {
+        switch (node.queue) {
+            case Node.WINDOW -> window.moveToBack(node);
+            case Node.PROBATION -> {
+                probation.remove(node);
+                node.queue = Node.PROTECTED;
+                protectedQueue.addLast(node);
+                protectedSize++;
+                demoteFromProtected();
+            }
+            case Node.PROTECTED -> protectedQueue.moveToBack(node);
+            default -> {
+                // already evicted or invalidated; a stale buffered read is harmless
+            }
+        }
+    }
+
+    private void demoteFromProtected() {
+        while (protectedSize > protectedMaximum) {
+            Node demoted = protectedQueue.pollFirst();
+            if (demoted == null) {
+                return;
+            }
+            protectedSize--;
+            demoted.queue = Node.PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    private void evictEntries() {
+        drainReadBuffers();
+
+        // Entries leaving the window become admission candidates at the tail of probation
+        Node candidate = null;
+        while (windowSize > windowMaximum) {
+            Node node = window.pollFirst();
+            if (node == null) {
+                break;
+            }
+            windowSize--;
+            node.queue = Node.PROBATION;
+            probation.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+
+        while (data.size() > maximumSize) {
+            Node victim = probation.peekFirst();
+            if (victim == null) {
+                victim = protectedQueue.peekFirst() != null ? protectedQueue.peekFirst() : window.peekFirst();
+                if (victim == null) {
+                    return;
+                }
+                evict(victim);
+                continue;
+            }
+            if (candidate == null || candidate == victim) {
+                candidate = candidate == null ? null : candidate.next;
+                evict(victim);
+                continue;
+            }
+
+            // TinyLFU admission: the candidate has to be more popular than the victim
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict(victim);
+            } else {
+                Node next = candidate.next;
+                evict(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void evict(Node node) {
+        data.remove(node.key, node);
+        unlink(node);
+        evictions.increment();
+    }
+
+    private void unlink(Node node) {
+        switch (node.queue) {
+            case Node.WINDOW -> {
+                window.remove(node);
+                windowSize--;
+            }
+            case Node.PROBATION -> probation.remove(node);
+            case Node.PROTECTED -> {
+                protectedQueue.remove(node);
+                protectedSize--;
+            }
+            default -> {
+            }
+        }
+        node.queue = Node.DEAD;
+    }
+
+    // ---------------------------------------------------------------------
+    // Supporting structures
+    // ---------------------------------------------------------------------
+
+    static final class Node {
+        static final int DEAD = 0;
+        static final int WINDOW = 1;
+        static final int PROBATION = 2;
+        static final int PROTECTED = 3;
+
+        final Long key;
+        volatile Product value;
+        volatile long version;
+
+        // Guarded by evictionLock
+        int queue;
+        Node prev;
+        Node next;
+
+        Node(Long key, Product value, long version) {
+            this.key = key;
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    /*
+     * Intrusive doubly linked list: moving a node to the back is O(1) and
+     * allocation free, unlike LinkedHashMap/LinkedList.
+     */
+    static final class AccessOrderDeque {
+        private Node head;
+        private Node tail;
+
+        Node peekFirst() {
+            return head;
+        }
+
+        Node pollFirst() {
+            Node first = head;
+            if (first != null) {
+                remove(first);
+            }
+            return first;
+        }
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /*
+     * Bounded, lossy ring buffer of recent reads. Producers only CAS a
+     * counter; if the buffer is full the read is simply not recorded (the
+     * policy is statistical, losing a few samples does not matter).
+     */
+    static final class ReadBuffer {
+        private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        int offer(Node node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long size = tail - head;
+            if (size >= READ_BUFFER_SIZE) {
+                return (int) size;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & READ_BUFFER_MASK), node);
+            }
+            return (int) size + 1;
+        }
+
+        // Single consumer: caller holds evictionLock
+        void drainTo(ProductCache cache) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & READ_BUFFER_MASK);
+                Node node = slots.get(index);
+                if (node == null) {
+                    break; // producer claimed the slot but has not published yet
+                }
+                slots.lazySet(index, null);
+                cache.sketch.increment(node.key);
+                cache.onAccess(node);
+            }
+            readCounter = head;
+        }
+    }
+
+    /*
+     * Count-Min sketch with 4-bit counters packed 16 per long. Counters are
+     * halved once the sample count reaches 10x the cache size, so the
+     * popularity estimate follows the recent workload instead of all-time
+     * totals.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = 10 * Math.max(maximumSize, 16);
+        }
+
+        int frequency(Long key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = counterOffset(hash, i);
+                int count = (int) ((table[index] >>> offset) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Long key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = counterOffset(hash, i);
+                long mask = 0xfL << offset;
+                if ((table[index] & mask) != mask) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int depth) {
+            long h = (hash + SEEDS[depth]) * SEEDS[depth];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        private static int counterOffset(int hash, int depth) {
+            // each depth uses a different 4-bit counter inside the selected long
+            return (((hash >>> (depth << 3)) & 3) << 2) + (depth << 4);
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
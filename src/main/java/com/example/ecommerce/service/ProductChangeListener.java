@@ -0,0 +1,20 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Product;
+
+import java.util.Collection;
+
+/*
+ * Implemented by the in-memory product indexes. ProductService calls these
+ * after the change is committed, never inside the transaction.
+ */
+public interface ProductChangeListener {
+
+    void onProductSaved(Product product);
+
+    void onProductDeleted(Long productId);
+
+    // Set-based changes (e.g. bulk repricing) only know which rows they touched
+    default void onProductsChanged(Collection<Long> productIds) {
+    }
+}
@@ -0,0 +1,576 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.entity.Product;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * In-memory full-text index over product name, description and category.
+ *
+ * - every product is a document with an int doc id; a term's postings list
+ * is one int[] in which each entry packs (doc id << 8 | weighted term
+ * frequency), appended in ascending doc order
+ * - field weights are folded into the term frequency: a term in the name
+ * counts 3x, in the category 2x, in the description 1x
+ * - ranking is BM25; documents that contain every query term rank above
+ * documents that only contain some of them
+ * - every query term also matches terms it is a prefix of ("lap" -> laptop),
+ * and a term with no exact or prefix match falls back to trigram
+ * similarity, which catches typos and word fragments ("lapotp", "phone" in
+ * "smartphone")
+ *
+ * An updated product gets a fresh doc id and its old doc becomes a tombstone
+ * (docProduct[doc] == 0) that queries skip. Once tombstones make up a quarter
+ * of the index the postings are compacted.
+ *
+ * Saves arrive as after-commit callbacks, which concurrent writers can run in
+ * the opposite order to their commits, so each doc records the row version it
+ * was built from (docVersion). An event for an older or the same version is
+ * dropped, as is a save reported after the product's delete (DeletedProducts).
+ *
+ * Queries take the read lock and score into a scratch accumulator borrowed
+ * from a small bounded pool (ScratchPool), so a query usually allocates
+ * nothing proportional to the catalog, and idle request threads hold no
+ * catalog-sized arrays.
+ * Writes (one product at a time, after commit) take the write lock for a few
+ * microseconds.
+ */
+@Component
+public class ProductSearchIndex implements ProductChangeListener {
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final int DOC_SHIFT = 8;
+    private static final int MAX_TF = (1 << DOC_SHIFT) - 1;
+    private static final int MAX_DOCS = 1 << (32 - DOC_SHIFT);
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_WEIGHT = 0.7;
+    private static final double FUZZY_WEIGHT = 0.5;
+    private static final double MIN_TRIGRAM_OVERLAP = 0.5;
+
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final int MAX_PREFIX_EXPANSIONS = 32;
+    private static final int MAX_PREFIX_SCAN = 512;
+    private static final int MAX_FUZZY_EXPANSIONS = 8;
+    private static final int MIN_TOMBSTONES_FOR_COMPACTION = 1024;
+
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "the", "of", "for", "with", "in", "on",
+            "to", "or", "by", "is");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // all guarded by lock
+    private final TreeMap<String, Posting> terms = new TreeMap<>(); // sorted, for prefix ranges
+    private final Map<String, Set<String>> trigramTerms = new HashMap<>();
+    private final Map<Long, Integer> productDoc = new HashMap<>();
+    private long[] docProduct = new long[1024]; // 0 = deleted
+    private int[] docLength = new int[1024];
+    private int[] docTextHash = new int[1024];
+    private long[] docVersion = new long[1024];
+    private final DeletedProducts deleted = new DeletedProducts();
+    private int docCount; // doc ids handed out, live and deleted
+    private int liveDocs;
+    private long totalLength;
+
+    private volatile boolean ready;
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    private final ScratchPool<Scratch> scratchPool = new ScratchPool<>(Scratch::new);
+
+    public record Hit(long productId, double score) {
+    }
+
+    // ---------------------------------------------------------------------
+    // Query
+    // ---------------------------------------------------------------------
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<Hit> search(String query, int limit) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.size() > MAX_QUERY_TERMS) {
+            queryTerms = queryTerms.subList(0, MAX_QUERY_TERMS);
+        }
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        queries.incrementAndGet();
+
+        lock.readLock().lock();
+        try {
+            if (liveDocs == 0) {
+                return List.of();
+            }
+            Scratch scratch = scratchPool.borrow();
+            scratch.ensureCapacity(docCount);
+            try {
+                double avgLength = (double) totalLength / liveDocs;
+                for (int q = 0; q < queryTerms.size(); q++) {
+                    String term = queryTerms.get(q);
+                    for (Map.Entry<Posting, Double> expansion : expand(term).entrySet()) {
+                        accumulate(expansion.getKey(), expansion.getValue(), q, avgLength, scratch);
+                    }
+                }
+                return topHits(scratch, Math.min(limit, scratch.touchedCount));
+            } finally {
+                scratch.reset();
+                scratchPool.giveBack(scratch);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // posting -> weight of the matched term relative to an exact match
+    private Map<Posting, Double> expand(String term) {
+        Map<Posting, Double> expansions = new LinkedHashMap<>();
+        Posting exact = terms.get(term);
+        if (exact != null) {
+            expansions.put(exact, 1.0);
+        }
+
+        if (term.length() >= 2) {
+            // keep the most frequent completions, so "s" style prefixes stay bounded
+            List<Posting> completions = new ArrayList<>();
+            int scanned = 0;
+            for (Map.Entry<String, Posting> entry : terms.subMap(term, false, term + Character.MAX_VALUE, false)
+                    .entrySet()) {
+                completions.add(entry.getValue());
+                if (++scanned >= MAX_PREFIX_SCAN) {
+                    break;
+                }
+            }
+            completions.sort((a, b) -> Integer.compare(b.size, a.size));
+            for (int i = 0; i < Math.min(MAX_PREFIX_EXPANSIONS, completions.size()); i++) {
+                expansions.putIfAbsent(completions.get(i), PREFIX_WEIGHT);
+            }
+        }
+
+        if (expansions.isEmpty() && term.length() >= 3) {
+            List<String> grams = trigrams(term);
+            Map<String, Integer> shared = new HashMap<>();
+            for (String gram : grams) {
+                Set<String> candidates = trigramTerms.get(gram);
+                if (candidates != null) {
+                    for (String candidate : candidates) {
+                        shared.merge(candidate, 1, Integer::sum);
+                    }
+                }
+            }
+            shared.entrySet().stream()
+                    .filter(e -> (double) e.getValue() / grams.size() >= MIN_TRIGRAM_OVERLAP)
+                    .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
+                    .limit(MAX_FUZZY_EXPANSIONS)
+                    .forEach(e -> expansions.put(terms.get(e.getKey()),
+                            FUZZY_WEIGHT * e.getValue() / grams.size()));
+        }
+        return expansions;
+    }
+
+    private void accumulate(Posting posting, double weight, int queryTerm, double avgLength, Scratch scratch) {
+        // df counts tombstones until the next compaction, close enough for idf
+        double idf = Math.log(1 + (liveDocs - posting.size + 0.5) / (posting.size + 0.5));
+        if (idf <= 0) {
+            idf = 1e-6;
+        }
+        int[] entries = posting.entries;
+        for (int i = 0; i < posting.size; i++) {
+            int doc = entries[i] >>> DOC_SHIFT;
+            if (docProduct[doc] == 0) {
+                continue;
+            }
+            int tf = entries[i] & MAX_TF;
+            double norm = K1 * (1 - B + B * docLength[doc] / avgLength);
+            double score = weight * idf * tf * (K1 + 1) / (tf + norm);
+            if (scratch.matched[doc] == 0) {
+                scratch.touched[scratch.touchedCount++] = doc;
+            }
+            scratch.matched[doc] |= 1 << queryTerm;
+            scratch.scores[doc] += (float) score;
+        }
+    }
+
+    // Bounded min-heap over the touched docs; the key is (query terms matched, score)
+    private List<Hit> topHits(Scratch scratch, int k) {
+        if (k == 0) {
+            return List.of();
+        }
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < scratch.touchedCount; i++) {
+            int doc = scratch.touched[i];
+            if (size < k) {
+                heap[size] = doc;
+                siftUp(heap, size++, scratch);
+            } else if (better(doc, heap[0], scratch)) {
+                heap[0] = doc;
+                siftDown(heap, size, scratch);
+            }
+        }
+        Hit[] hits = new Hit[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int doc = heap[0];
+            hits[i] = new Hit(docProduct[doc], scratch.scores[doc]);
+            heap[0] = heap[i];
+            siftDown(heap, i, scratch);
+        }
+        return Arrays.asList(hits);
+    }
+
+    private static boolean better(int a, int b, Scratch scratch) {
+        int matchedA = Integer.bitCount(scratch.matched[a]);
+        int matchedB = Integer.bitCount(scratch.matched[b]);
+        if (matchedA != matchedB) {
+            return matchedA > matchedB;
+        }
+        if (scratch.scores[a] != scratch.scores[b]) {
+            return scratch.scores[a] > scratch.scores[b];
+        }
+        return a < b;
+    }
+
+    private static void siftUp(int[] heap, int index, Scratch scratch) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], heap[index], scratch)) {
+                return;
+            }
+            swap(heap, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, Scratch scratch) {
+        int index = 0;
+        for (;;) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && better(heap[smallest], heap[left], scratch)) {
+                smallest = left;
+            }
+            if (right < size && better(heap[smallest], heap[right], scratch)) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(heap, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int tmp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = tmp;
+    }
+
+    // ---------------------------------------------------------------------
+    // Maintenance
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void onProductSaved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Long version = product.getVersion();
+            indexProduct(product.getId(), product.getName(), product.getDescription(), product.getCategory(),
+                    version == null ? 0 : version);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onProductDeleted(Long productId) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = productDoc.remove(productId);
+            if (doc != null) {
+                deleteDoc(doc);
+                maybeCompact();
+            }
+            deleted.add(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Bulk repricing never changes the indexed text, so onProductsChanged stays a no-op
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            trigramTerms.clear();
+            productDoc.clear();
+            docCount = 0;
+            liveDocs = 0;
+            totalLength = 0;
+            jdbcTemplate.query("SELECT id, name, description, category, version FROM products ORDER BY id",
+                    rs -> {
+                        indexProduct(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                                rs.getLong(5));
+                    });
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexProduct(long productId, String name, String description, String category, long version) {
+        if (deleted.contains(productId)) {
+            return; // committed before the delete, reported after it
+        }
+        int textHash = Objects.hash(name, description, category);
+        Integer existing = productDoc.get(productId);
+        if (existing != null) {
+            if (version <= docVersion[existing]) {
+                return; // an older row than the one indexed
+            }
+            if (docTextHash[existing] == textHash) {
+                docVersion[existing] = version;
+                return; // price or stock change, nothing to reindex
+            }
+            deleteDoc(existing);
+        }
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        addField(frequencies, name, NAME_WEIGHT);
+        addField(frequencies, category, CATEGORY_WEIGHT);
+        addField(frequencies, description, DESCRIPTION_WEIGHT);
+
+        if (docCount == MAX_DOCS) {
+            compact();
+            if (docCount == MAX_DOCS) {
+                throw new IllegalStateException("Product search index is full");
+            }
+        }
+        int doc = docCount++;
+        ensureDocCapacity(docCount);
+        int length = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            String term = entry.getKey();
+            Posting posting = terms.get(term);
+            if (posting == null) {
+                posting = new Posting();
+                terms.put(term, posting);
+                for (String gram : trigrams(term)) {
+                    trigramTerms.computeIfAbsent(gram, g -> new HashSet<>()).add(term);
+                }
+            }
+            int tf = Math.min(entry.getValue(), MAX_TF);
+            posting.add(doc << DOC_SHIFT | tf);
+            length += entry.getValue();
+        }
+        docProduct[doc] = productId;
+        docLength[doc] = length;
+        docTextHash[doc] = textHash;
+        docVersion[doc] = version;
+        productDoc.put(productId, doc);
+        liveDocs++;
+        totalLength += length;
+        maybeCompact();
+    }
+
+    private static void addField(Map<String, Integer> frequencies, String text, int weight) {
+        for (String term : tokenize(text)) {
+            frequencies.merge(term, weight, Integer::sum);
+        }
+    }
+
+    private void deleteDoc(int doc) {
+        docProduct[doc] = 0;
+        liveDocs--;
+        totalLength -= docLength[doc];
+    }
+
+    private void maybeCompact() {
+        int tombstones = docCount - liveDocs;
+        if (tombstones >= MIN_TOMBSTONES_FOR_COMPACTION && tombstones * 4 >= docCount) {
+            compact();
+        }
+    }
+
+    /*
+     * Drops tombstones from every postings list and renumbers the live docs.
+     * The renumbering keeps the relative doc order, so postings stay sorted.
+     */
+    private void compact() {
+        int[] remap = new int[docCount];
+        int next = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (docProduct[doc] == 0) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = next;
+                docProduct[next] = docProduct[doc];
+                docLength[next] = docLength[doc];
+                docTextHash[next] = docTextHash[doc];
+                docVersion[next] = docVersion[doc];
+                productDoc.put(docProduct[next], next);
+                next++;
+            }
+        }
+        docCount = next;
+
+        var iterator = terms.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Posting> entry = iterator.next();
+            Posting posting = entry.getValue();
+            int kept = 0;
+            for (int i = 0; i < posting.size; i++) {
+                int target = remap[posting.entries[i] >>> DOC_SHIFT];
+                if (target >= 0) {
+                    posting.entries[kept++] = target << DOC_SHIFT | (posting.entries[i] & MAX_TF);
+                }
+            }
+            posting.size = kept;
+            if (kept == 0) {
+                iterator.remove();
+                for (String gram : trigrams(entry.getKey())) {
+                    Set<String> gramTerms = trigramTerms.get(gram);
+                    if (gramTerms != null && gramTerms.remove(entry.getKey()) && gramTerms.isEmpty()) {
+                        trigramTerms.remove(gram);
+                    }
+                }
+            } else if (kept < posting.entries.length / 4) {
+                posting.entries = Arrays.copyOf(posting.entries, Math.max(kept, 4));
+            }
+        }
+        compactions.incrementAndGet();
+    }
+
+    private void ensureDocCapacity(int capacity) {
+        if (capacity > docProduct.length) {
+            int newLength = Math.min(Math.max(capacity, docProduct.length * 2), MAX_DOCS);
+            docProduct = Arrays.copyOf(docProduct, newLength);
+            docLength = Arrays.copyOf(docLength, newLength);
+            docTextHash = Arrays.copyOf(docTextHash, newLength);
+            docVersion = Arrays.copyOf(docVersion, newLength);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Text analysis
+    // ---------------------------------------------------------------------
+
+    // lowercase, split on anything that is not a letter or digit, drop stop words
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = lower.substring(start, i);
+                if (!STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // padded trigrams: "cat" -> $$c $ca cat at$ t$$
+    private static List<String> trigrams(String term) {
+        String padded = "$$" + term + "$$";
+        List<String> grams = new ArrayList<>(padded.length() - 2);
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    public Map<String, Long> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> stats = new LinkedHashMap<>();
+            stats.put("documents", (long) liveDocs);
+            stats.put("tombstones", (long) (docCount - liveDocs));
+            stats.put("terms", (long) terms.size());
+            stats.put("queries", queries.get());
+            stats.put("compactions", compactions.get());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Supporting structures
+    // ---------------------------------------------------------------------
+
+    private static final class Posting {
+        int[] entries = new int[4];
+        int size;
+
+        void add(int entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size + (size >> 1) + 1);
+            }
+            entries[size++] = entry;
+        }
+    }
+
+    // Per-thread score accumulator; only the touched slots are cleared after a query
+    private static final class Scratch {
+        float[] scores = new float[0];
+        int[] matched = new int[0]; // bit per query term
+        int[] touched = new int[0];
+        int touchedCount;
+
+        void ensureCapacity(int docs) {
+            if (scores.length < docs) {
+                int length = Math.max(docs, scores.length * 2);
+                scores = new float[length];
+                matched = new int[length];
+                touched = new int[length];
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                scores[touched[i]] = 0;
+                matched[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -1,37 +1,89 @@
 package com.example.ecommerce.service;
 
+import com.example.ecommerce.dto.StockReservationLine;
 import com.example.ecommerce.entity.Product;
 import com.example.ecommerce.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import jakarta.persistence.OptimisticLockException;
 
+import com.example.ecommerce.exception.FeatureDisabledException;
+import com.example.ecommerce.exception.InsufficientStockException;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.exception.PreconditionFailedException;
 import com.example.ecommerce.exception.ProductNotFoundException;
+import com.example.ecommerce.exception.ServiceUnavailableException;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 
 
 @Service
 public class ProductService {
 
+    private static final long INDEX_RETRY_AFTER_SECONDS = 5;
+
     @Autowired
     private ProductRepository productRepository;
 
     @Autowired
     private Executor taskExecutor;
 
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private StockLedger stockLedger;
+
+    @Autowired
+    private PriceUpdateJobService priceUpdateJobService;
+
+    @Autowired
+    private CategoryIndex categoryIndex;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private LowStockWatcher lowStockWatcher;
+
+    @Autowired
+    private List<ProductChangeListener> productChangeListeners;
+
+    /*
+     * No service-wide lock: reads are served from the lock-free ProductCache,
+     * writes are protected by the row version (@Version) in the database.
+     */
     private final AtomicLong operationCounter = new AtomicLong(0);
-    private final ConcurrentHashMap<Long, Product> productCache = new ConcurrentHashMap<>();
 
     // CREATE - Thread-safe product creation
     @Transactional
@@ -43,50 +95,35 @@ public class ProductService {
      * If one operation fails, everything is rolled back
      */
     public Product createProduct(Product product) {
-        rwLock.writeLock().lock();
-        try {
-            operationCounter.incrementAndGet();
-            // You want to track how many products were created during the application's
-            // runtime
-
-            Product savedProduct = productRepository.save(product);
-            productCache.put(savedProduct.getId(), savedProduct);
-            return savedProduct;
-        } finally {
-            rwLock.writeLock().unlock();
-            /*
-             * Before returning the value, Java checks for a finally block.
-             * 
-             * If finally is present, it is guaranteed to run first, before the return
-             * happens.
-             * 
-             * Once the finally block finishes, the actual return happens.
-             */
-        }
+        operationCounter.incrementAndGet();
+        // You want to track how many products were created during the application's
+        // runtime
+        requireNonNegativeStock(product.getStockQuantity());
+
+        Product savedProduct = productRepository.save(product);
+        cacheAfterCommit(savedProduct);
+        notifySavedAfterCommit(savedProduct);
+        return savedProduct;
     }
 
     /*
      * For read-only operations, skipping @Transactional is often better (faster,
      * avoids unnecessary DB locking)
      */
-    // READ - Thread-safe with caching and read locks
-    @Transactional(readOnly = true)
+    // READ - lock-free cache hit, repository (own read transaction) on a miss
     public Optional<Product> getProduct(Long id) {
-        rwLock.readLock().lock();
-        try {
-            // check cache first
-            Product cachedProduct = productCache.get(id);
-            
-            if (cachedProduct != null) {
-                return Optional.of(cachedProduct);
-            }
+        // check cache first
+        Product cachedProduct = productCache.get(id);
 
-            Optional<Product> product = productRepository.findById(id);
-            product.ifPresent(p -> productCache.put(id, p));
-            return product;
-        } finally {
-            rwLock.readLock().unlock();
+        if (cachedProduct != null) {
+            return Optional.of(withLiveStock(cachedProduct));
         }
+
+        long stamp = productCache.loadStamp(id);
+        Optional<Product> product = productRepository.findById(id);
+        // ignored if a newer version got cached, or the product was invalidated (deleted), meanwhile
+        product.ifPresent(p -> productCache.putLoaded(p, stamp));
+        return product.map(p -> withLiveStock(ProductCache.copyOf(p)));
     }
 
     // READ ALL - Concurrent processing
@@ -94,15 +131,76 @@ public class ProductService {
     @Transactional(readOnly = true)
     public CompletableFuture<List<Product>> getAllProductsAsync() {
         return CompletableFuture.supplyAsync(() -> {
-            rwLock.readLock().lock();
-            try {
-                return productRepository.findAll();
-            } finally {
-                rwLock.readLock().unlock();
-            }
+            List<Product> products = productRepository.findAll();
+            products.forEach(this::withLiveStock);
+            return products;
         }, taskExecutor);
     }
 
+    /*
+     * Streaming listing with keyset pagination: each page is
+     * WHERE id > :lastSeenId ... ORDER BY id LIMIT :pageSize, which stays an
+     * index range scan however deep the client reads (OFFSET would rescan all
+     * skipped rows). Rows are mapped with plain JDBC, not through the
+     * persistence context, so only the current page is ever held in memory.
+     * The page is handed to the consumer (the HTTP response) before the next
+     * one is fetched.
+     */
+    public long streamProducts(String category, BigDecimal minPrice, BigDecimal maxPrice, int pageSize,
+            Consumer<List<Product>> pageConsumer) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, name, description, price, stock_quantity, category, created_at, updated_at, version "
+                        + "FROM products WHERE id > ?");
+        List<Object> filters = new ArrayList<>();
+        if (category != null) {
+            sql.append(" AND category = ?");
+            filters.add(category);
+        }
+        if (minPrice != null) {
+            sql.append(" AND price >= ?");
+            filters.add(minPrice);
+        }
+        if (maxPrice != null) {
+            sql.append(" AND price <= ?");
+            filters.add(maxPrice);
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        String query = sql.toString();
+
+        long lastSeenId = 0;
+        long streamed = 0;
+        for (;;) {
+            Object[] args = new Object[filters.size() + 2];
+            args[0] = lastSeenId;
+            for (int i = 0; i < filters.size(); i++) {
+                args[i + 1] = filters.get(i);
+            }
+            args[args.length - 1] = pageSize;
+
+            List<Product> page = jdbcTemplate.query(query, PRODUCT_ROW_MAPPER, args);
+            if (page.isEmpty()) {
+                return streamed;
+            }
+            page.forEach(this::withLiveStock);
+            pageConsumer.accept(page);
+            streamed += page.size();
+            if (page.size() < pageSize) {
+                return streamed;
+            }
+            lastSeenId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private static final RowMapper<Product> PRODUCT_ROW_MAPPER = (rs, rowNum) -> {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        Timestamp updatedAt = rs.getTimestamp("updated_at");
+        return new Product(rs.getLong("id"), rs.getString("name"), rs.getString("description"),
+                rs.getBigDecimal("price"), rs.getInt("stock_quantity"), rs.getString("category"),
+                createdAt == null ? null : createdAt.toLocalDateTime(),
+                updatedAt == null ? null : updatedAt.toLocalDateTime(),
+                rs.getLong("version"));
+    };
+
     // UPDATE - Optimistic locking with retry mechanism
     @Transactional
     public Product updateProduct(Long id, Product updatedProduct) {
@@ -111,44 +209,24 @@ public class ProductService {
 
         while (retryCount < maxRetries) {
             try {
-                rwLock.writeLock().lock(); // Optional if @Version is used properly
-                try {
-                    Optional<Product> existingProductOpt = productRepository.findById(id);
-                    if (existingProductOpt.isEmpty()) {
-                        throw new ProductNotFoundException(id);
-                    }
-
-                    Product existingProduct = existingProductOpt.get();
-
-                    // Apply only non-null updates (safe partial update)
-                    if (updatedProduct.getName() != null) {
-                        existingProduct.setName(updatedProduct.getName());
-                    }
-                    if (updatedProduct.getDescription() != null) {
-                        existingProduct.setDescription(updatedProduct.getDescription());
-                    }
-                    if (updatedProduct.getPrice() != null) {
-                        existingProduct.setPrice(updatedProduct.getPrice());
-                    }
-                    if (updatedProduct.getStockQuantity() != null) {
-                        existingProduct.setStockQuantity(updatedProduct.getStockQuantity());
-                    }
-                    if (updatedProduct.getCategory() != null) {
-                        existingProduct.setCategory(updatedProduct.getCategory());
-                    }
-
-                    // Save with optimistic locking via @Version
-                    Product savedProduct = productRepository.save(existingProduct);
-
-                    // Update cache and counter
-                    productCache.put(savedProduct.getId(), savedProduct);
-                    operationCounter.incrementAndGet();
-
-                    return savedProduct;
-                } finally {
-                    rwLock.writeLock().unlock();
+                Optional<Product> existingProductOpt = productRepository.findById(id);
+                if (existingProductOpt.isEmpty()) {
+                    throw new ProductNotFoundException(id);
                 }
 
+                Product existingProduct = existingProductOpt.get();
+                applyChanges(existingProduct, updatedProduct);
+
+                // Save with optimistic locking via @Version
+                Product savedProduct = productRepository.save(existingProduct);
+
+                // Cache the new version once it is committed, bump the counter
+                cacheAfterCommit(savedProduct);
+                notifySavedAfterCommit(savedProduct);
+                operationCounter.incrementAndGet();
+
+                return savedProduct;
+
             } catch (OptimisticLockException e) {
                 retryCount++;
                 if (retryCount >= maxRetries) {
@@ -167,87 +245,401 @@ public class ProductService {
         throw new RuntimeException("Unexpected error during product update");
     }
 
-    // DELETE - Thread-safe deletion
+    /*
+     * Conditional update for If-Match: a single attempt against the version the
+     * client read, no server-side retry. A mismatch, or a writer committing
+     * between our read and our flush, is reported as a failed precondition so
+     * the client can re-read and decide.
+     */
     @Transactional
-    public boolean deleteProduct(Long id) {
-        rwLock.writeLock().lock();
+    public Product updateProduct(Long id, Product updatedProduct, long expectedVersion) {
+        Product existingProduct = productRepository.findById(id)
+                .orElseThrow(() -> new ProductNotFoundException(id));
+        if (existingProduct.getVersion() == null || existingProduct.getVersion() != expectedVersion) {
+            throw new PreconditionFailedException(id, expectedVersion);
+        }
+        applyChanges(existingProduct, updatedProduct);
+
+        Product savedProduct;
         try {
-            if (!productRepository.existsById(id)) {
-                // productRepository.deleteById(id);
-                // productCache.remove(id);
-                // operationCounter.incrementAndGet();
-                // return true;
-                throw new ProductNotFoundException(id);
+            savedProduct = productRepository.saveAndFlush(existingProduct);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new PreconditionFailedException(id, expectedVersion);
+        }
+        cacheAfterCommit(savedProduct);
+        notifySavedAfterCommit(savedProduct);
+        operationCounter.incrementAndGet();
+        return savedProduct;
+    }
+
+    // Apply only non-null updates (safe partial update)
+    private void applyChanges(Product existingProduct, Product updatedProduct) {
+        Long id = existingProduct.getId();
+        if (updatedProduct.getName() != null) {
+            existingProduct.setName(updatedProduct.getName());
+        }
+        if (updatedProduct.getDescription() != null) {
+            existingProduct.setDescription(updatedProduct.getDescription());
+        }
+        if (updatedProduct.getPrice() != null) {
+            existingProduct.setPrice(updatedProduct.getPrice());
+        }
+        if (updatedProduct.getStockQuantity() != null) {
+            int newStock = updatedProduct.getStockQuantity();
+            requireNonNegativeStock(newStock);
+            existingProduct.setStockQuantity(newStock);
+            if (stockLedger.isEnabled()) {
+                // absolute correction: the ledger adopts it once the row is committed
+                afterCommit(() -> stockLedger.set(id, newStock));
             }
-            productRepository.deleteById(id);
-                productCache.remove(id);
-                operationCounter.incrementAndGet();
-                return true;
-         } finally {
-             rwLock.writeLock().unlock();
-         }
+        } else if (stockLedger.isEnabled()) {
+            // the row is saved with the stock read above; have the flusher write the live value back
+            afterCommit(() -> stockLedger.touch(id));
+        }
+        if (updatedProduct.getCategory() != null) {
+            existingProduct.setCategory(updatedProduct.getCategory());
+        }
+    }
+
+    // checked before the row is written: the ledger would refuse it only after the commit
+    private static void requireNonNegativeStock(Integer stock) {
+        if (stock != null && stock < 0) {
+            throw new InvalidRequestException("Stock quantity cannot be negative: " + stock);
+        }
     }
 
-    // Thread-safe stock management with pessimistic locking
+    // DELETE - Thread-safe deletion
     @Transactional
+    public boolean deleteProduct(Long id) {
+        if (!productRepository.existsById(id)) {
+            throw new ProductNotFoundException(id);
+        }
+        productRepository.deleteById(id);
+        invalidateAfterCommit(id);
+        afterCommit(() -> stockLedger.forget(id));
+        afterCommit(() -> notifyListeners(listener -> listener.onProductDeleted(id)));
+        operationCounter.incrementAndGet();
+        return true;
+    }
+
+    /*
+     * Stock management.
+     * 
+     * Ledger enabled (default): an atomic CAS on the in-memory counter, no
+     * transaction and no row lock; the table is updated by the write-behind
+     * flusher.
+     * 
+     * Ledger disabled: pessimistic row lock, one transaction per change.
+     */
     public boolean updateStock(Long productId, Integer quantityChange) {
-        Optional<Product> productOpt = productRepository.findByIdForUpdate(productId);
-        
-        Product product = productOpt.orElseThrow(() -> new ProductNotFoundException(productId));
-        /* internal representation
-         * if (productOpt.isPresent()) {
-         * return productOpt.get(); // Internally called, yes — but safely
-         * } else {
-         * throw new ProductNotFoundException(productId);
-         * }
-         */
-        int newQuantity = product.getStockQuantity() + quantityChange;
-
-        if (newQuantity < 0) {
-            throw new RuntimeException("Insufficient stock. Available: " + product.getStockQuantity());
+        if (stockLedger.isEnabled()) {
+            stockLedger.adjust(productId, quantityChange);
+            return true;
         }
-        product.setStockQuantity(newQuantity);
-        productRepository.save(product);
-        productCache.put(productId, product);
+
+        // the transaction (and its connection) is only opened on this path
+        transactionTemplate.executeWithoutResult(status -> {
+            Optional<Product> productOpt = productRepository.findByIdForUpdate(productId);
+
+            Product product = productOpt.orElseThrow(() -> new ProductNotFoundException(productId));
+            /* internal representation
+             * if (productOpt.isPresent()) {
+             * return productOpt.get(); // Internally called, yes — but safely
+             * } else {
+             * throw new ProductNotFoundException(productId);
+             * }
+             */
+            int newQuantity;
+            try {
+                newQuantity = Math.addExact(product.getStockQuantity(), quantityChange);
+            } catch (ArithmeticException e) {
+                throw new InvalidRequestException("Stock of product " + productId + " cannot exceed "
+                        + Integer.MAX_VALUE);
+            }
+
+            if (newQuantity < 0) {
+                throw new InsufficientStockException(productId, -quantityChange, product.getStockQuantity());
+            }
+            product.setStockQuantity(newQuantity);
+            productRepository.save(product);
+            cacheAfterCommit(product);
+            afterCommit(() -> lowStockWatcher.onStockChanged(productId, newQuantity));
+        });
         return true;
     }
 
-    @Async("taskExecutor")
-    public CompletableFuture<String> batchUpdatePrices(List<Long> productIds, Double priceMultiplier) {
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
+    /*
+     * Multi-product checkout: every line is reserved or none is.
+     * 
+     * Lines are merged per product and processed in ascending product id
+     * order. Two carts sharing SKUs therefore always acquire them in the same
+     * order and can never deadlock each other.
+     * 
+     * Ledger enabled: CAS reservations, compensated in reverse order if a later
+     * line is short.
+     * 
+     * Ledger disabled: one transaction of conditional updates
+     * (WHERE stock_quantity >= ?), each taking its row lock in id order; a
+     * short line throws and rolls the whole cart back. The transaction is only
+     * opened on this path, the ledger path needs no connection at all.
+     */
+    public int reserveBatch(List<StockReservationLine> lines) {
+        TreeMap<Long, Integer> quantities = new TreeMap<>();
+        for (StockReservationLine line : lines) {
+            if (line.getProductId() == null || line.getQuantity() == null || line.getQuantity() <= 0) {
+                throw new InvalidRequestException("Every line needs a productId and a positive quantity");
+            }
+            try {
+                quantities.merge(line.getProductId(), line.getQuantity(), Math::addExact);
+            } catch (ArithmeticException e) {
+                throw new InvalidRequestException("Total quantity for product " + line.getProductId()
+                        + " exceeds " + Integer.MAX_VALUE);
+            }
+        }
 
-        for (Long productId : productIds) {
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                try {
-                    Optional<Product> productOpt = getProduct(productId);
-                    if (productOpt.isPresent()) {
-                        Product product = productOpt.get();
-                        product.setPrice(product.getPrice().multiply(BigDecimal.valueOf(priceMultiplier)));
-                        updateProduct(productId, product); // assumes proper locking
-                    }
-                } catch (Exception e) {
-                    System.err.println("Failed to update price for product " + productId + ": " + e.getMessage());
+        if (stockLedger.isEnabled()) {
+            Deque<Map.Entry<Long, Integer>> reserved = new ArrayDeque<>();
+            try {
+                for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+                    stockLedger.reserve(line.getKey(), line.getValue());
+                    reserved.push(line);
                 }
-            }, taskExecutor); // Use Spring-managed executor
-            futures.add(future);
+            } catch (RuntimeException e) {
+                while (!reserved.isEmpty()) {
+                    Map.Entry<Long, Integer> line = reserved.pop();
+                    stockLedger.release(line.getKey(), line.getValue());
+                }
+                throw e;
+            }
+            return quantities.size();
         }
 
-        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                .thenApply(v -> "Batch price update completed for " + productIds.size() + " products");
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Map.Entry<Long, Integer> line : quantities.entrySet()) {
+                Long productId = line.getKey();
+                int quantity = line.getValue();
+                if (productRepository.reserveStock(productId, quantity) == 0) {
+                    Product product = productRepository.findById(productId)
+                            .orElseThrow(() -> new ProductNotFoundException(productId));
+                    throw new InsufficientStockException(productId, quantity, product.getStockQuantity());
+                }
+            }
+            afterCommit(() -> {
+                productCache.invalidateAll(quantities.keySet());
+                lowStockWatcher.refresh(quantities.keySet());
+            });
+        });
+        return quantities.size();
     }
 
-    public List<Product> getProductsByCategory(String category) {
-        return productRepository.findByCategory(category);
+    // Bulk repricing runs as a tracked, set-based job, see PriceUpdateJobService
+    public PriceUpdateJob batchUpdatePrices(List<Long> productIds, Double priceMultiplier) {
+        return priceUpdateJobService.start(productIds, priceMultiplier);
     }
 
+    public Optional<PriceUpdateJob> getPriceUpdateJob(String jobId) {
+        return priceUpdateJobService.getJob(jobId);
+    }
+
+    /*
+     * Category pages are answered from the in-memory CategoryIndex: it returns
+     * the ids of the requested page already in order, and the products are
+     * resolved through the cache. Only while the index is still loading (or
+     * for a stock sort without the ledger) does this fall back to a table query.
+     */
+    public List<Product> getProductsByCategory(String category, CategoryIndex.SortField sort, boolean descending,
+            int offset, int limit) {
+        long[] ids = categoryIndex.query(category, sort, descending, offset, limit);
+        if (ids != null) {
+            return resolveProducts(ids);
+        }
+
+        Comparator<Product> order = switch (sort) {
+            case ID -> Comparator.comparing(Product::getId);
+            case PRICE -> Comparator.comparing(Product::getPrice).thenComparing(Product::getId);
+            case STOCK -> Comparator.comparing(Product::getStockQuantity).thenComparing(Product::getId);
+        };
+        return productRepository.findByCategory(category).stream()
+                .map(this::withLiveStock)
+                .sorted(descending ? order.reversed() : order)
+                .skip(Math.max(offset, 0))
+                .limit(limit)
+                .toList();
+    }
+
+    // Full-text search: ranked ids from the in-memory index, products from the cache
+    public List<Product> searchProducts(String query, int limit) {
+        if (!productSearchIndex.isReady()) {
+            throw new ServiceUnavailableException(
+                    "Product search index is still loading, retry shortly", INDEX_RETRY_AFTER_SECONDS);
+        }
+        List<ProductSearchIndex.Hit> hits = productSearchIndex.search(query, limit);
+        long[] ids = new long[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.get(i).productId();
+        }
+        return resolveProducts(ids);
+    }
+
+    public Map<String, Long> getSearchIndexStats() {
+        return productSearchIndex.stats();
+    }
+
+    /*
+     * Products for the given ids, in that order. Cache hits are copied, all
+     * misses are loaded with a single IN query and cached. Ids that no longer
+     * exist are skipped.
+     */
+    private List<Product> resolveProducts(long[] ids) {
+        Product[] resolved = new Product[ids.length];
+        List<Long> missing = new ArrayList<>();
+        Map<Long, Long> stamps = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            resolved[i] = productCache.get(ids[i]);
+            if (resolved[i] == null) {
+                missing.add(ids[i]);
+                stamps.put(ids[i], productCache.loadStamp(ids[i]));
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, Product> loaded = new HashMap<>();
+            for (Product product : productRepository.findAllById(missing)) {
+                productCache.putLoaded(product, stamps.get(product.getId()));
+                loaded.put(product.getId(), ProductCache.copyOf(product));
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (resolved[i] == null) {
+                    resolved[i] = loaded.get(ids[i]);
+                }
+            }
+        }
+        List<Product> products = new ArrayList<>(ids.length);
+        for (Product product : resolved) {
+            if (product != null) {
+                products.add(withLiveStock(product));
+            }
+        }
+        return products;
+    }
+
+    /*
+     * Answered from the LowStockWatcher's stock histogram when the threshold is
+     * within its tracked range, lowest stock first. Stock may move between the
+     * index read and the product lookup, so the live value is checked again.
+     */
     public List<Product> getLowStockProducts(Integer threshold) {
-        return productRepository.findByStockQuantityLessThan(threshold);
+        if (!lowStockWatcher.canAnswer(threshold)) {
+            // the column can be a flush behind the ledger: report the live count and drop restocked products
+            return productRepository.findByStockQuantityLessThan(threshold).stream()
+                    .map(this::withLiveStock)
+                    .filter(p -> p.getStockQuantity() < threshold)
+                    .toList();
+        }
+        return resolveProducts(lowStockWatcher.lowStockIds(threshold)).stream()
+                .filter(p -> p.getStockQuantity() < threshold)
+                .toList();
+    }
+
+    public SseEmitter subscribeToStockAlerts() {
+        return lowStockWatcher.subscribe();
+    }
+
+    public Map<String, Long> getLowStockWatcherStats() {
+        return lowStockWatcher.stats();
     }
 
     public long getOperationCount() {
         return operationCounter.get();
     }
 
+    public Map<String, Long> getCacheStats() {
+        return productCache.stats();
+    }
+
+    public Map<String, Long> getStockLedgerStats() {
+        return stockLedger.stats();
+    }
+
+    public Map<String, Object> getStockDetails(Long productId) {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("productId", productId);
+        if (!stockLedger.isEnabled()) {
+            Product product = getProduct(productId).orElseThrow(() -> new ProductNotFoundException(productId));
+            details.put("available", product.getStockQuantity());
+            details.put("buckets", 1);
+            return details;
+        }
+        details.put("available", stockLedger.available(productId));
+        details.put("buckets", stockLedger.bucketCount(productId));
+        details.put("bucketCounts", stockLedger.bucketCounts(productId));
+        return details;
+    }
+
+    // Split stock mode for hot SKUs: buckets = 1 switches back to a single counter
+    public Map<String, Object> switchStockMode(Long productId, int buckets) {
+        if (!stockLedger.isEnabled()) {
+            throw new FeatureDisabledException("Split stock mode requires the stock ledger (app.stock.ledger.enabled)");
+        }
+        stockLedger.switchMode(productId, buckets);
+        return getStockDetails(productId);
+    }
+
+    // Between two flushes the ledger is ahead of the stock_quantity column
+    private Product withLiveStock(Product product) {
+        if (stockLedger.isEnabled()) {
+            stockLedger.peekAvailable(product.getId()).ifPresent(product::setStockQuantity);
+        }
+        return product;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /*
+     * The @Version of a managed entity is only incremented when the transaction
+     * flushes, so the cache is populated after commit: it then holds exactly the
+     * committed row, tagged with its committed version.
+     */
+    private void invalidateAfterCommit(Long id) {
+        productCache.invalidate(id);
+        // a concurrent miss may have re-cached the row before the delete committed
+        afterCommit(() -> productCache.invalidate(id));
+    }
+
+    private void cacheAfterCommit(Product product) {
+        afterCommit(() -> productCache.put(product));
+    }
+
+    // copied after the commit, like the cache fill: only then does it carry the committed version
+    private void notifySavedAfterCommit(Product product) {
+        afterCommit(() -> {
+            Product snapshot = ProductCache.copyOf(product);
+            notifyListeners(listener -> listener.onProductSaved(snapshot));
+        });
+    }
+
+    // An index that fails to update must not fail the (already committed) write
+    private void notifyListeners(Consumer<ProductChangeListener> event) {
+        for (ProductChangeListener listener : productChangeListeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                System.err.println("Product change listener " + listener.getClass().getSimpleName()
+                        + " failed: " + e.getMessage());
+            }
+        }
+    }
+
 }
 
 /*
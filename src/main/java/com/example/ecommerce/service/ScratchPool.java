@@ -0,0 +1,38 @@
+package com.example.ecommerce.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Supplier;
+
+/*
+ * Bounded pool of reusable per-query buffers.
+ *
+ * A ThreadLocal buffer lives as long as its thread and keeps the largest size
+ * it ever needed: with a couple of hundred request threads that adds up to
+ * gigabytes for catalog-sized arrays. Here at most `capacity` idle buffers
+ * are kept, by default one per core (queries are CPU bound, so more would
+ * rarely be in use at once). A query that finds the pool empty allocates a
+ * fresh buffer; a buffer given back to a full pool is left to the GC.
+ */
+final class ScratchPool<T> {
+
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    ScratchPool(Supplier<T> factory) {
+        this(Runtime.getRuntime().availableProcessors(), factory);
+    }
+
+    ScratchPool(int capacity, Supplier<T> factory) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    T borrow() {
+        T buffer = idle.poll();
+        return buffer != null ? buffer : factory.get();
+    }
+
+    void giveBack(T buffer) {
+        idle.offer(buffer);
+    }
+}
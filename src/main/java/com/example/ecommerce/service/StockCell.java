@@ -0,0 +1,427 @@
+package com.example.ecommerce.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Available stock of one product, owned by the StockLedger.
+ *
+ * The stock is held in one or more buckets. A normal product has a single
+ * bucket; a hot product in "split stock" mode has N buckets that buyers draw
+ * down independently, so thousands of threads buying the same SKU do not all
+ * CAS the same cache line.
+ *
+ * - a reservation is one conditional CAS on the thread's home bucket (on the
+ * only bucket for a normal product): it succeeds only if the bucket holds the
+ * whole quantity, so a bucket is never drained and refilled
+ * - when the home bucket cannot cover it, the reservation takes the cell's
+ * rebalance lock and freezes every bucket. With all buckets frozen it sees
+ * the exact total: it fails if that is too small, otherwise it takes the
+ * quantity and spreads the rest evenly over the buckets again
+ *
+ * So a reservation fails only when the stock really is short, and no reader
+ * ever sees units that are in transit between buckets.
+ *
+ * Each bucket is one long: high 32 bits are a modification stamp, bit 31 the
+ * frozen flag, the low 31 bits the count. available() sums the buckets twice
+ * and accepts the result when no stamp moved in between, which proves every
+ * bucket held those values at one instant. Under sustained churn it freezes
+ * the buckets instead, so total-stock reads are always exact. Buckets are
+ * spread 8 longs (one cache line) apart.
+ *
+ * Counts are never negative and never above Integer.MAX_VALUE per bucket:
+ * negative quantities are rejected (IllegalArgumentException), an add that
+ * would overflow a bucket throws ArithmeticException before writing, and
+ * every write masks the count, so no value can ever set the frozen flag. A
+ * split cell's total may exceed Integer.MAX_VALUE; available() saturates.
+ *
+ * The dirty flag tells the write-behind flusher that the stock moved since
+ * it was last written to the products table. Mutations set it both before
+ * and after they land: before, so reconciliation never adopts the table value
+ * over a change in progress; after, so a flush that cleared it in between
+ * still sees the change on its next round.
+ */
+final class StockCell {
+
+    private static final int PADDING = 8; // longs per cache line
+    private static final int SNAPSHOT_ATTEMPTS = 4;
+    private static final long STAMP_UNIT = 1L << 32;
+    private static final long FROZEN = 1L << 31;
+    private static final long COUNT_MASK = FROZEN - 1;
+
+    private final int buckets;
+    private final int stride;
+    private final AtomicLongArray slots;
+    private final ReentrantLock rebalanceLock = new ReentrantLock(); // the only thread that freezes buckets
+
+    private volatile boolean dirty;
+
+    // Mode switch support, see StockLedger.switchMode
+    private volatile boolean open;
+    private volatile boolean retired;
+    private volatile StockCell successor;
+
+    StockCell(int initial) {
+        this(initial, 1, true);
+    }
+
+    StockCell(int initial, int buckets, boolean open) {
+        requireNonNegative(initial);
+        this.buckets = buckets;
+        this.stride = buckets == 1 ? 1 : PADDING;
+        this.slots = new AtomicLongArray(buckets * stride);
+        this.open = open;
+        for (int i = 0; i < buckets; i++) {
+            slots.set(i * stride, share(initial, i));
+        }
+    }
+
+    // Adds stock spread evenly over all buckets (used when a mode switch moves stock in)
+    void seed(int quantity) {
+        requireNonNegative(quantity);
+        markDirty();
+        for (int i = 0; i < buckets; i++) {
+            int share = share(quantity, i);
+            if (share > 0) {
+                add(i, share);
+            }
+        }
+        markDirty();
+    }
+
+    // even split, remainder to the first buckets; fits an int as long as quantity <= buckets * Integer.MAX_VALUE
+    private int share(long quantity, int bucket) {
+        return (int) (quantity / buckets + (bucket < quantity % buckets ? 1 : 0));
+    }
+
+    int buckets() {
+        return buckets;
+    }
+
+    boolean tryReserve(int quantity) {
+        requireNonNegative(quantity);
+        awaitOpen();
+        markDirty();
+        int home = homeBucket();
+        if (takeIfAvailable(home, quantity)) {
+            markDirty();
+            return true;
+        }
+        if (buckets == 1) {
+            return false; // the only bucket is short: the stock is
+        }
+
+        // home bucket is short: decide on the exact total with every bucket frozen
+        rebalanceLock.lock();
+        try {
+            long total = freezeAll();
+            if (total < quantity) {
+                unfreezeAll();
+                return false;
+            }
+            redistribute(total - quantity);
+        } finally {
+            rebalanceLock.unlock();
+        }
+        markDirty();
+        return true;
+    }
+
+    // ArithmeticException if the home bucket would overflow; nothing is added then
+    void release(int quantity) {
+        requireNonNegative(quantity);
+        markDirty();
+        add(homeBucket(), quantity);
+        markDirty();
+        if (retired) {
+            forwardToSuccessor(); // landed after the mode switch drained this cell
+        }
+    }
+
+    // Absolute value, e.g. an admin correction: replaces whatever the buckets hold
+    void set(int quantity) {
+        requireNonNegative(quantity);
+        markDirty();
+        if (buckets == 1) {
+            for (;;) {
+                long current = slots.get(0);
+                if (slots.compareAndSet(0, current, next(current, quantity))) {
+                    break;
+                }
+            }
+        } else {
+            rebalanceLock.lock();
+            try {
+                freezeAll();
+                redistribute(quantity);
+            } finally {
+                rebalanceLock.unlock();
+            }
+        }
+        markDirty();
+        if (retired) {
+            forwardToSuccessor();
+        }
+    }
+
+    int available() {
+        if (buckets == 1) {
+            return count(slots.get(0));
+        }
+        long[] first = new long[buckets];
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            for (int i = 0; i < buckets; i++) {
+                first[i] = slots.get(i * stride);
+            }
+            boolean stable = true;
+            long total = 0;
+            for (int i = 0; i < buckets; i++) {
+                long second = slots.get(i * stride);
+                if (second != first[i] || (second & FROZEN) != 0) {
+                    stable = false;
+                    break;
+                }
+                total += count(second);
+            }
+            if (stable) {
+                return saturated(total);
+            }
+            Thread.onSpinWait();
+        }
+        // under sustained churn: freeze the buckets for the few reads it takes to sum them
+        rebalanceLock.lock();
+        try {
+            long total = freezeAll();
+            unfreezeAll();
+            return saturated(total);
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    int[] bucketCounts() {
+        int[] counts = new int[buckets];
+        for (int i = 0; i < buckets; i++) {
+            counts[i] = count(slots.get(i * stride));
+        }
+        return counts;
+    }
+
+    /*
+     * Used by reconciliation: only overwrite a value nobody changed in the
+     * meantime. The compare and the write are one CAS (one bucket) or happen
+     * with every bucket frozen, so a reservation landing in between is never
+     * undone; one that is merely in progress has already set the dirty flag.
+     */
+    boolean adoptIfClean(int expected, int persisted) {
+        requireNonNegative(persisted);
+        if (buckets == 1) {
+            long current = slots.get(0);
+            if (dirty || count(current) != expected) {
+                return false;
+            }
+            return slots.compareAndSet(0, current, next(current, persisted));
+        }
+        rebalanceLock.lock();
+        try {
+            long total = freezeAll();
+            if (dirty || total != expected) {
+                unfreezeAll();
+                return false;
+            }
+            redistribute(persisted);
+            return true;
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void markDirty() {
+        if (!dirty) { // read first, so hot counters do not keep invalidating the flag's cache line
+            dirty = true;
+        }
+    }
+
+    /*
+     * The flag is cleared BEFORE the flusher reads the counter: any change that
+     * lands after the read sets the flag again and is picked up by the next flush.
+     */
+    boolean clearDirty() {
+        if (!dirty) {
+            return false;
+        }
+        dirty = false;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------
+    // Mode switch: this cell is replaced by a successor with another bucket count
+    // ---------------------------------------------------------------------
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    StockCell successor() {
+        return successor;
+    }
+
+    /*
+     * Order matters: the successor is published before the retired flag, and
+     * the retired flag before the drain. A release that lands after the drain
+     * therefore always sees retired == true and forwards its own units.
+     */
+    int retireInto(StockCell next) {
+        successor = next;
+        retired = true;
+        return drainAll();
+    }
+
+    void open() {
+        open = true;
+    }
+
+    private void forwardToSuccessor() {
+        int moved = drainAll();
+        if (moved > 0) {
+            successor.release(moved);
+        }
+    }
+
+    private int drainAll() {
+        long drained = 0;
+        for (int i = 0; i < buckets; i++) {
+            drained += take(i, Integer.MAX_VALUE);
+        }
+        return saturated(drained);
+    }
+
+    private void awaitOpen() {
+        while (!open) {
+            Thread.onSpinWait(); // only during a mode switch, which is a handful of CAS operations
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Bucket primitives
+    // ---------------------------------------------------------------------
+
+    // All or nothing: the bucket is only written if it holds the whole quantity
+    private boolean takeIfAvailable(int bucket, int quantity) {
+        int index = bucket * stride;
+        for (;;) {
+            long current = slots.get(index);
+            if ((current & FROZEN) != 0) {
+                Thread.onSpinWait(); // a rebalance is deciding on the total
+                continue;
+            }
+            int count = count(current);
+            if (count < quantity) {
+                return false;
+            }
+            if (slots.compareAndSet(index, current, next(current, count - quantity))) {
+                return true;
+            }
+        }
+    }
+
+    private int take(int bucket, int wanted) {
+        int index = bucket * stride;
+        for (;;) {
+            long current = slots.get(index);
+            if ((current & FROZEN) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int count = count(current);
+            if (count == 0) {
+                return 0;
+            }
+            int taken = Math.min(count, wanted);
+            if (slots.compareAndSet(index, current, next(current, count - taken))) {
+                return taken;
+            }
+        }
+    }
+
+    private void add(int bucket, int quantity) {
+        int index = bucket * stride;
+        for (;;) {
+            long current = slots.get(index);
+            if ((current & FROZEN) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (slots.compareAndSet(index, current, next(current, Math.addExact(count(current), quantity)))) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Caller holds rebalanceLock. Sets the frozen flag on every bucket; CAS
+     * operations on a frozen bucket wait, so once all are frozen the counts
+     * cannot move. Returns their exact total.
+     */
+    private long freezeAll() {
+        long total = 0;
+        for (int i = 0; i < buckets; i++) {
+            int index = i * stride;
+            for (;;) {
+                long current = slots.get(index);
+                if (slots.compareAndSet(index, current, current | FROZEN)) {
+                    total += count(current);
+                    break;
+                }
+            }
+        }
+        return total;
+    }
+
+    // Caller holds rebalanceLock with all buckets frozen
+    private void unfreezeAll() {
+        for (int i = 0; i < buckets; i++) {
+            int index = i * stride;
+            slots.set(index, slots.get(index) & ~FROZEN);
+        }
+    }
+
+    // Caller holds rebalanceLock with all buckets frozen: writes the new total, spread evenly, and unfreezes
+    private void redistribute(long total) {
+        for (int i = 0; i < buckets; i++) {
+            int index = i * stride;
+            slots.set(index, next(slots.get(index), share(total, i)));
+        }
+    }
+
+    private int homeBucket() {
+        if (buckets == 1) {
+            return 0;
+        }
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (h >>> 16) % buckets;
+    }
+
+    private static int count(long slot) {
+        return (int) (slot & COUNT_MASK);
+    }
+
+    // The slot after a write: stamp bumped, unfrozen, count masked so it can never reach the frozen bit
+    private static long next(long current, int count) {
+        return (current & ~(COUNT_MASK | FROZEN)) + STAMP_UNIT | (count & COUNT_MASK);
+    }
+
+    private static int saturated(long total) {
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    private static void requireNonNegative(int quantity) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Stock quantity cannot be negative: " + quantity);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.ecommerce.service;
+
+/*
+ * Registered with the StockLedger (addListener). Called synchronously on the
+ * thread that moved the stock, so implementations must be cheap and must not
+ * block.
+ */
+public interface StockChangeListener {
+
+    void onStockChanged(Long productId, int available);
+}
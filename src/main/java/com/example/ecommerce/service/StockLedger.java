@@ -0,0 +1,403 @@
+package com.example.ecommerce.service;
+
+import com.example.ecommerce.exception.InsufficientStockException;
+import com.example.ecommerce.exception.InvalidRequestException;
+import com.example.ecommerce.exception.ProductNotFoundException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * In-memory stock ledger: the source of truth for available stock while the
+ * application runs.
+ *
+ * - reserve / release are CAS operations on a per-product counter (StockCell),
+ * no row lock and no transaction per unit sold
+ * - a write-behind flusher periodically writes the current value of every
+ * counter that moved since the last flush, as one JDBC batch of
+ * UPDATE products SET stock_quantity = ? ... statements. A thousand sales of
+ * one SKU between two flushes become a single UPDATE.
+ * - reconcile() compares the ledger with the table. It runs on startup and
+ * after a failed flush.
+ *
+ * Counters are loaded lazily from the table the first time a product is
+ * touched, so products created after startup need no registration.
+ *
+ * Hot SKUs can be switched to "split stock" mode (switchMode), where the
+ * counter is spread over N buckets, see StockCell.
+ *
+ * Flushes do not bump the row version: stock is owned by the ledger, the
+ * version only tracks catalogue edits (name, price, ...). A product that keeps
+ * selling therefore keeps its version, so If-Match updates and the
+ * ProductCache entry survive the write-behind. Readers overlay the live
+ * ledger value on the cached row.
+ *
+ * Quantities are checked here, at the boundary: negative quantities and
+ * releases that would push a product past Integer.MAX_VALUE are rejected as
+ * invalid requests. A negative stock found in the table counts as zero.
+ */
+@Component
+public class StockLedger {
+
+    private static final String FLUSH_SQL = "UPDATE products SET stock_quantity = ?, updated_at = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.stock.ledger.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.stock.ledger.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${app.stock.split.max-buckets:64}")
+    private int maxBuckets;
+
+    private final ConcurrentHashMap<Long, StockCell> cells = new ConcurrentHashMap<>();
+    private final List<StockChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock flushLock = new ReentrantLock(); // flush and reconcile never overlap
+    private final ReentrantLock switchLock = new ReentrantLock(); // one mode switch at a time
+
+    private final AtomicLong reservations = new AtomicLong();
+    private final AtomicLong rejectedReservations = new AtomicLong();
+    private final AtomicLong releases = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushBatches = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong reconciliations = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void reserve(Long productId, int quantity) {
+        requireNonNegative(quantity);
+        StockCell cell = cell(productId);
+        while (!cell.tryReserve(quantity)) {
+            if (!cell.isRetired()) {
+                rejectedReservations.incrementAndGet();
+                throw new InsufficientStockException(productId, quantity, cell.available());
+            }
+            cell = cell.successor(); // the product switched stock mode under us
+        }
+        reservations.incrementAndGet();
+        notifyListeners(productId, cell);
+    }
+
+    public void release(Long productId, int quantity) {
+        requireNonNegative(quantity);
+        StockCell cell = latest(cell(productId));
+        if (quantity > Integer.MAX_VALUE - cell.available()) {
+            throw tooMuchStock(productId);
+        }
+        try {
+            cell.release(quantity);
+        } catch (ArithmeticException e) {
+            throw tooMuchStock(productId); // raced with another release past the check
+        }
+        releases.incrementAndGet();
+        notifyListeners(productId, cell);
+    }
+
+    // Same contract as the old updateStock: negative change reserves, positive change releases
+    public void adjust(Long productId, int quantityChange) {
+        if (quantityChange < 0) {
+            reserve(productId, -quantityChange);
+        } else if (quantityChange > 0) {
+            release(productId, quantityChange);
+        }
+    }
+
+    // Absolute value, e.g. an admin correcting the stock through PATCH /api/products/{id}
+    public void set(Long productId, int quantity) {
+        requireNonNegative(quantity);
+        StockCell cell = latest(cell(productId));
+        cell.set(quantity);
+        notifyListeners(productId, cell);
+    }
+
+    public int available(Long productId) {
+        return latest(cell(productId)).available();
+    }
+
+    // Never touches the database: empty if the product is not tracked yet
+    public OptionalInt peekAvailable(Long productId) {
+        StockCell cell = cells.get(productId);
+        return cell == null ? OptionalInt.empty() : OptionalInt.of(latest(cell).available());
+    }
+
+    // For bulk readers (category sort) racing with deletes: a vanished product counts as 0
+    public int availableOrZero(Long productId) {
+        try {
+            return available(productId);
+        } catch (ProductNotFoundException e) {
+            return 0;
+        }
+    }
+
+    /*
+     * A JPA update of the product wrote the stock it had read along with the
+     * other columns; schedule the ledger value to be written again. Untracked
+     * products have no ledger value, the table is authoritative for them.
+     */
+    public void touch(Long productId) {
+        StockCell cell = cells.get(productId);
+        if (cell != null) {
+            latest(cell).markDirty();
+        }
+    }
+
+    public void forget(Long productId) {
+        cells.remove(productId);
+    }
+
+    public void addListener(StockChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(Long productId, StockCell cell) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        int available = latest(cell).available();
+        for (StockChangeListener listener : listeners) {
+            try {
+                listener.onStockChanged(productId, available);
+            } catch (RuntimeException e) {
+                System.err.println("Stock change listener failed for product " + productId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private StockCell cell(Long productId) {
+        StockCell cell = cells.get(productId);
+        if (cell != null) {
+            return cell;
+        }
+        // queried outside the map: computeIfAbsent would hold the bin lock across the round trip
+        Integer persisted = loadStock(productId);
+        if (persisted == null) {
+            throw new ProductNotFoundException(productId);
+        }
+        StockCell loaded = new StockCell(Math.max(0, persisted));
+        StockCell raced = cells.putIfAbsent(productId, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private static void requireNonNegative(int quantity) {
+        if (quantity < 0) {
+            throw new InvalidRequestException("Stock quantity cannot be negative: " + quantity);
+        }
+    }
+
+    private static InvalidRequestException tooMuchStock(Long productId) {
+        return new InvalidRequestException("Stock of product " + productId + " cannot exceed " + Integer.MAX_VALUE);
+    }
+
+    private static StockCell latest(StockCell cell) {
+        while (cell.isRetired()) {
+            cell = cell.successor();
+        }
+        return cell;
+    }
+
+    private Integer loadStock(Long productId) {
+        return jdbcTemplate.query("SELECT stock_quantity FROM products WHERE id = ?",
+                rs -> rs.next() ? rs.getInt(1) : null, productId);
+    }
+
+    // ---------------------------------------------------------------------
+    // Split stock mode
+    // ---------------------------------------------------------------------
+
+    public int bucketCount(Long productId) {
+        return latest(cell(productId)).buckets();
+    }
+
+    public int[] bucketCounts(Long productId) {
+        return latest(cell(productId)).bucketCounts();
+    }
+
+    /*
+     * Replaces the product's cell by one with the requested number of buckets
+     * (1 = normal mode) without blocking buyers:
+     * 1. the successor is created closed (reservations on it spin until opened)
+     * 2. the old cell is retired and drained into the successor; reservations
+     * that fail on the retired cell follow the successor, late releases are
+     * forwarded by the old cell itself
+     * 3. the successor is opened and installed in the map
+     * The total never changes, it is only redistributed.
+     */
+    public void switchMode(Long productId, int buckets) {
+        if (buckets < 1 || buckets > maxBuckets) {
+            throw new InvalidRequestException("buckets must be between 1 and " + maxBuckets);
+        }
+        switchLock.lock();
+        try {
+            StockCell current = latest(cell(productId));
+            if (current.buckets() == buckets) {
+                return;
+            }
+            StockCell next = new StockCell(0, buckets, false);
+            int moved = current.retireInto(next);
+            next.seed(moved);
+            next.open();
+            cells.replace(productId, current, next);
+        } finally {
+            switchLock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Write-behind
+    // ---------------------------------------------------------------------
+
+    @Scheduled(fixedDelayString = "${app.stock.ledger.flush-interval-ms:200}")
+    public void flush() {
+        if (!enabled || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Long> ids = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+            for (Map.Entry<Long, StockCell> entry : cells.entrySet()) {
+                StockCell cell = entry.getValue();
+                if (cell.isRetired() || !cell.clearDirty()) {
+                    continue; // a retired cell's stock already moved to its successor
+                }
+                ids.add(entry.getKey());
+                rows.add(new Object[] { cell.available(), now, entry.getKey() });
+                if (rows.size() >= flushBatchSize) {
+                    if (!writeBatch(ids, rows)) {
+                        return;
+                    }
+                    ids = new ArrayList<>();
+                    rows = new ArrayList<>();
+                }
+            }
+            if (!rows.isEmpty()) {
+                writeBatch(ids, rows);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean writeBatch(List<Long> ids, List<Object[]> rows) {
+        try {
+            int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(FLUSH_SQL, rows));
+            flushBatches.incrementAndGet();
+            flushedRows.addAndGet(rows.size());
+            for (int i = 0; i < ids.size(); i++) {
+                if (counts != null && counts[i] == 0) {
+                    cells.remove(ids.get(i)); // product was deleted
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            flushFailures.incrementAndGet();
+            System.err.println("Stock flush failed for " + ids.size() + " products: " + e.getMessage());
+            for (Long id : ids) {
+                StockCell cell = cells.get(id);
+                if (cell != null) {
+                    cell.markDirty(); // retry on the next flush
+                }
+            }
+            reconcile();
+            return false;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Reconciliation
+    // ---------------------------------------------------------------------
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if (enabled) {
+            reconcile();
+        }
+    }
+
+    /*
+     * - tracked products that no longer exist are dropped
+     * - counters with unflushed changes keep their value (the ledger wins and
+     * the next flush writes it)
+     * - clean counters that disagree with the table adopt the table value: the
+     * row was changed behind the ledger's back
+     * - on startup every existing product is seeded
+     */
+    public void reconcile() {
+        flushLock.lock();
+        try {
+            reconciliations.incrementAndGet();
+            Map<Long, Integer> persisted = new HashMap<>();
+            jdbcTemplate.query("SELECT id, stock_quantity FROM products",
+                    rs -> {
+                        persisted.put(rs.getLong(1), rs.getInt(2));
+                    });
+
+            for (Map.Entry<Long, StockCell> entry : cells.entrySet()) {
+                Integer stock = persisted.get(entry.getKey());
+                StockCell cell = entry.getValue();
+                if (cell.isRetired()) {
+                    continue;
+                }
+                if (stock == null) {
+                    cells.remove(entry.getKey(), cell);
+                } else {
+                    int current = cell.available();
+                    int table = Math.max(0, stock);
+                    if (current != table && cell.adoptIfClean(current, table)) {
+                        notifyListeners(entry.getKey(), cell);
+                    }
+                }
+            }
+            persisted.forEach((id, stock) -> cells.putIfAbsent(id, new StockCell(Math.max(0, stock))));
+        } catch (RuntimeException e) {
+            System.err.println("Stock reconciliation failed: " + e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Map<String, Long> stats() {
+        long dirty = cells.values().stream().filter(StockCell::isDirty).count();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("trackedProducts", (long) cells.size());
+        stats.put("splitProducts", cells.values().stream().filter(c -> c.buckets() > 1).count());
+        stats.put("pendingFlush", dirty);
+        stats.put("reservations", reservations.get());
+        stats.put("rejectedReservations", rejectedReservations.get());
+        stats.put("releases", releases.get());
+        stats.put("flushBatches", flushBatches.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("reconciliations", reconciliations.get());
+        return stats;
+    }
+}